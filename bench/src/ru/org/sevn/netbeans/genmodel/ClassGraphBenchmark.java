@@ -0,0 +1,130 @@
+/*
+ * Copyright 2018 Veronica Anokhina.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.org.sevn.netbeans.genmodel;
+
+import java.io.IOException;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * UML graph of a package of entities: building it, printing it as PlantUML, splitting it into parts
+ * and the per-class diagrams of {@link UMLAction}.
+ * buildCold describes the classes with a new class loader and provider for every call, build uses the cached descriptors.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ClassGraphBenchmark {
+
+    @Param({"1", "10", "100", "1000"})
+    public int classes;
+
+    @Param({"10", "100"})
+    public int fields;
+
+    private SyntheticEntities entities;
+    private List<EntityDescriptor> roots;
+    private ClassGraph graph;
+    private DiagramEmitter plantUml;
+
+    /**
+     * New class loader and provider for every call.
+     */
+    @State(Scope.Thread)
+    public static class Cold {
+        private URLClassLoader loader;
+        private MetadataProvider provider;
+
+        @Setup(Level.Invocation)
+        public void setup(final ClassGraphBenchmark benchmark) throws IOException {
+            loader = benchmark.entities.newLoader();
+            provider = MetadataProvider.forClassLoader(loader);
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() throws IOException {
+            loader.close();
+        }
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        entities = SyntheticEntities.create(classes, fields);
+        roots = entities.describe();
+        graph = build();
+        plantUml = DiagramEmitter.plantUml();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        entities.close();
+    }
+
+    @Benchmark
+    public ClassGraph build() {
+        return ClassGraph.build(roots, ClassGraph.underPackage(SyntheticEntities.PACKAGE), -1);
+    }
+
+    @Benchmark
+    public ClassGraph buildCold(final Cold cold) {
+        final List<EntityDescriptor> ret = new ArrayList<>();
+        for (final String n : entities.getClassNames()) {
+            ret.add(cold.provider.describe(n));
+        }
+        return ClassGraph.build(ret, ClassGraph.underPackage(SyntheticEntities.PACKAGE), -1);
+    }
+
+    @Benchmark
+    public long printClasses() {
+        final CodeWriter out = CodeWriter.buffer();
+        plantUml.emit(out, graph, null, -1);
+        return out.length();
+    }
+
+    @Benchmark
+    public int[] partition() {
+        return graph.partition(UMLAction.DEFAULT_PART_SIZE);
+    }
+
+    @Benchmark
+    public long classDiagrams() {
+        long ret = 0;
+        for (final EntityDescriptor d : roots) {
+            final CodeWriter out = CodeWriter.buffer();
+            plantUml.emit(out, UMLAction.classDiagram(d.getType(), SyntheticEntities.PACKAGE), null, -1);
+            ret += out.length();
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2018 Veronica Anokhina.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.org.sevn.netbeans.genmodel;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Reading the Codegen annotation of every field of an entity.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class CodegenBenchmark {
+
+    @Param({"10", "100", "1000", "5000"})
+    public int fields;
+
+    private SyntheticEntities entities;
+    private Field[] declared;
+    private String codegen;
+
+    @Setup
+    public void setup() throws IOException {
+        entities = SyntheticEntities.create(1, fields);
+        declared = entities.getProvider().loadClass(entities.getClassNames().get(0)).getDeclaredFields();
+        codegen = App.instance().getCodeGenClassName();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        entities.close();
+    }
+
+    @Benchmark
+    public void getCodegen(final Blackhole bh) {
+        for (final Field f : declared) {
+            bh.consume(CodegenUtil.getCodegen(codegen, f));
+        }
+    }
+}
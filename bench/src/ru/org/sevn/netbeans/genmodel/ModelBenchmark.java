@@ -0,0 +1,143 @@
+/*
+ * Copyright 2018 Veronica Anokhina.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.org.sevn.netbeans.genmodel;
+
+import java.io.IOException;
+import java.net.URLClassLoader;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Field collection and model/Dao generation for one entity with a growing number of fields.
+ * The *Cold benchmarks get a new class loader and provider for every call, so the classes are loaded
+ * and described again, the others read the cached descriptors after the first call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ModelBenchmark {
+
+    @Param({"10", "100", "1000", "5000"})
+    public int fields;
+
+    private SyntheticEntities entities;
+    private String className;
+
+    /**
+     * New class loader and provider for every call.
+     */
+    @State(Scope.Thread)
+    public static class Cold {
+        private URLClassLoader loader;
+        private MetadataProvider provider;
+
+        @Setup(Level.Invocation)
+        public void setup(final ModelBenchmark benchmark) throws IOException {
+            loader = benchmark.entities.newLoader();
+            provider = MetadataProvider.forClassLoader(loader);
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() throws IOException {
+            loader.close();
+        }
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        entities = SyntheticEntities.create(1, fields);
+        className = entities.getClassNames().get(0);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        entities.close();
+    }
+
+    private long format(final BaseAction action, final String modelName) {
+        return format(entities.getProvider(), action, modelName);
+    }
+
+    private long format(final MetadataProvider provider, final BaseAction action, final String modelName) {
+        final CodeWriter out = CodeWriter.buffer();
+        action.formatJavaModel(out, provider, className, SyntheticEntities.PACKAGE + "." + modelName, modelName);
+        return out.length();
+    }
+
+    private Map<String, String> fillFields(final MetadataProvider provider) {
+        final Map<String, String> ret = new LinkedHashMap<>();
+        new CreateModelAction().fillFields(provider, className, "CreateEntity0Model", new HashSet<String>(), ret);
+        return ret;
+    }
+
+    @Benchmark
+    public Map<String, String> fillFields() {
+        return fillFields(entities.getProvider());
+    }
+
+    @Benchmark
+    public Map<String, String> fillFieldsCold(final Cold cold) {
+        return fillFields(cold.provider);
+    }
+
+    @Benchmark
+    public long createModel() {
+        return format(new CreateModelAction(), "CreateEntity0Model");
+    }
+
+    @Benchmark
+    public long modifyModel() {
+        return format(new ModifyModelAction(false), "ModifyEntity0Model");
+    }
+
+    @Benchmark
+    public long modifyModelMask() {
+        return format(new ModifyModelAction(true), "ModifyEntity0Model");
+    }
+
+    @Benchmark
+    public long queryModel() {
+        return format(new QueryModelAction(), "AbstractQueryEntity0Model");
+    }
+
+    @Benchmark
+    public long dao() {
+        return format(new DaoAction(false), "Entity0Dao");
+    }
+
+    @Benchmark
+    public long daoCold(final Cold cold) {
+        return format(cold.provider, new DaoAction(false), "Entity0Dao");
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2018 Veronica Anokhina.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.org.sevn.netbeans.genmodel;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * Entity classes generated and compiled for the benchmarks.
+ * Entity&lt;i&gt; extends an abstract base with a generated id, its fields cycle through simple types,
+ * references and lists of the next entities (so the UML graph is connected) and carry Column and Codegen annotations,
+ * field1 is the sort key of the keyset pagination.
+ * The annotations are generated too if they are not on the class path.
+ */
+final class SyntheticEntities implements Closeable {
+
+    static final String PACKAGE = "bench.entity";
+
+    private static final String[] TYPES = {"String", "Long", "Integer", "java.util.Date", "Boolean", "java.math.BigDecimal"};
+
+    private final File dir;
+    private final URLClassLoader loader;
+    private final MetadataProvider provider;
+    private final List<String> classNames = new ArrayList<>();
+
+    private SyntheticEntities(final File dir, final int classes) throws IOException {
+        this.dir = dir;
+        this.loader = newLoader();
+        this.provider = MetadataProvider.forClassLoader(loader);
+        for (int i = 0; i < classes; i++) {
+            classNames.add(PACKAGE + ".Entity" + i);
+        }
+    }
+
+    /**
+     * @param classes number of entities
+     * @param fields number of fields of every entity
+     */
+    public static SyntheticEntities create(final int classes, final int fields) throws IOException {
+        final File dir = Files.createTempDirectory("genmodel-bench").toFile();
+        final File src = new File(dir, "src");
+        final List<File> files = new ArrayList<>();
+        if (!isLoadable("javax.persistence.Entity")) {
+            files.add(write(src, "javax.persistence.Entity", "@java.lang.annotation.Retention(java.lang.annotation.RetentionPolicy.RUNTIME)\n"
+                    + "public @interface Entity {}\n"));
+            files.add(write(src, "javax.persistence.Column", "@java.lang.annotation.Retention(java.lang.annotation.RetentionPolicy.RUNTIME)\n"
+                    + "public @interface Column { boolean insertable() default true; boolean updatable() default true; }\n"));
+            files.add(write(src, "javax.persistence.Id", "@java.lang.annotation.Retention(java.lang.annotation.RetentionPolicy.RUNTIME)\n"
+                    + "public @interface Id {}\n"));
+            files.add(write(src, "javax.persistence.GeneratedValue", "@java.lang.annotation.Retention(java.lang.annotation.RetentionPolicy.RUNTIME)\n"
+                    + "public @interface GeneratedValue {}\n"));
+        }
+        final String codegen = App.instance().getCodeGenClassName();
+        if (!isLoadable(codegen)) {
+            files.add(write(src, codegen, "@java.lang.annotation.Retention(java.lang.annotation.RetentionPolicy.RUNTIME)\n"
+                    + "public @interface " + ClassNames.getClassNameShort(codegen) + " {\n"
+                    + "    boolean searchable() default true;\n"
+                    + "    String getterPrefix() default \"get\";\n"
+                    + "    String searchFieldName() default \"\";\n"
+                    + "    String operation() default \"\";\n"
+                    + "    String queryExpression() default \"\";\n"
+                    + "    String joinType() default \"\";\n"
+                    + "    String joinEntityOrField() default \"\";\n"
+                    + "    String joinAlias() default \"\";\n"
+                    + "    String joinOnExpression() default \"\";\n"
+                    + "    String sortKey() default \"\";\n"
+                    + "}\n"));
+        }
+        files.add(write(src, PACKAGE + ".BaseEntity", "public abstract class BaseEntity {\n"
+                + "    @javax.persistence.Id @javax.persistence.GeneratedValue @javax.persistence.Column(updatable = false) protected Long id;\n"
+                + "    protected java.util.Date created;\n"
+                + "}\n"));
+        for (int i = 0; i < classes; i++) {
+            final StringBuilder sb = new StringBuilder();
+            sb.append("@javax.persistence.Entity\n");
+            sb.append("public class Entity").append(i).append(" extends BaseEntity {\n");
+            sb.append("    private static final long serialVersionUID = 1L;\n");
+            for (int f = 0; f < fields; f++) {
+                sb.append("    ");
+                if (f % 7 == 3) {
+                    sb.append("@javax.persistence.Column(updatable = false) ");
+                }
+                if (f % 5 == 2) {
+                    sb.append("@").append(codegen).append("(operation = \"andLike\") ");
+                } else if (f == 1) {
+                    sb.append("@").append(codegen).append("(sortKey = \"asc\") ");
+                }
+                final int kind = f % (TYPES.length + 2);
+                final String ref = "Entity" + (i + 1 + f / (TYPES.length + 2)) % classes;
+                if (kind < TYPES.length) {
+                    sb.append("private ").append(TYPES[kind]);
+                } else if (kind == TYPES.length) {
+                    sb.append("private ").append(ref);
+                } else {
+                    sb.append("private java.util.List<").append(ref).append(">");
+                }
+                sb.append(" field").append(f).append(";\n");
+            }
+            sb.append("}\n");
+            files.add(write(src, PACKAGE + ".Entity" + i, sb.toString()));
+        }
+        compile(files, new File(dir, "classes"));
+        return new SyntheticEntities(dir, classes);
+    }
+
+    private static boolean isLoadable(final String className) {
+        try {
+            Class.forName(className, false, SyntheticEntities.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError ex) {
+            return false;
+        }
+    }
+
+    private static File write(final File src, final String className, final String body) throws IOException {
+        final File f = new File(src, className.replace('.', '/') + ".java");
+        f.getParentFile().mkdirs();
+        final String pkg = ClassNames.getPackage(className);
+        Files.write(f.toPath(), (pkg == null ? body : "package " + pkg + ";\n\n" + body).getBytes(StandardCharsets.UTF_8));
+        return f;
+    }
+
+    private static void compile(final List<File> files, final File out) throws IOException {
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new IllegalStateException("The benchmarks compile their entities and need a JDK");
+        }
+        out.mkdirs();
+        try (final StandardJavaFileManager fm = compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8)) {
+            final List<String> options = Arrays.asList("-nowarn", "-proc:none", "-d", out.getPath(),
+                    "-classpath", System.getProperty("java.class.path"));
+            if (!compiler.getTask(null, fm, null, options, null, fm.getJavaFileObjectsFromFiles(files)).call()) {
+                throw new IOException("Can't compile the entities in " + out.getParent());
+            }
+        }
+    }
+
+    /**
+     * @return new loader of the entities, its classes and descriptors are not cached anywhere yet
+     */
+    public URLClassLoader newLoader() throws IOException {
+        return new URLClassLoader(new URL[] {new File(dir, "classes").toURI().toURL()}, SyntheticEntities.class.getClassLoader());
+    }
+
+    public MetadataProvider getProvider() {
+        return provider;
+    }
+
+    public List<String> getClassNames() {
+        return classNames;
+    }
+
+    public List<EntityDescriptor> describe() {
+        final List<EntityDescriptor> ret = new ArrayList<>();
+        for (final String n : classNames) {
+            ret.add(provider.describe(n));
+        }
+        return ret;
+    }
+
+    @Override
+    public void close() throws IOException {
+        loader.close();
+        delete(dir);
+    }
+
+    private static void delete(final File f) {
+        final File[] children = f.listFiles();
+        if (children != null) {
+            for (final File c : children) {
+                delete(c);
+            }
+        }
+        f.delete();
+    }
+}
@@ -17,22 +17,20 @@ package ru.org.sevn.netbeans.genmodel;
 
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.lang.reflect.Field;
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
-import java.util.List;
 import java.util.Map;
+import javax.swing.text.JTextComponent;
 import org.netbeans.api.editor.EditorRegistry;
 import org.netbeans.api.project.SourceGroup;
 import org.openide.filesystems.FileObject;
-import org.openide.loaders.DataObject;
-import org.openide.util.Lookup;
 
 public abstract class BaseAction implements ActionListener {
     
+    public static final String GENERATED_BEGIN = "//=====================GENERATED========================\n";
+    public static final String GENERATED_END = "//=====================end==============================\n";
+    
     protected static HashSet<String> excludedFields = new HashSet<>();
     protected static HashSet<String> excludedTypes = new HashSet<>();
     static {
@@ -41,62 +39,64 @@ public abstract class BaseAction implements ActionListener {
         excludedFields.add("recordId");
     }
     
-    protected String getFormatted(final FileObject editedFile, final String selectedString, final String content) {
+    /**
+     * Called in the background, see {@link GenerationTask}.
+     * @return generated code or null
+     */
+    protected String getFormatted(final FileObject editedFile, final String selectedString) {
         if (editedFile != null) {
             if (editedFile.getExt() != null) {
                 switch(editedFile.getExt().toLowerCase()) {
                     case ".java":
                     case "java":
-                        return formatJava(editedFile, selectedString, content);
+                        return formatJava(editedFile, selectedString);
                 }
             }
         }
-        return selectedString;
+        return null;
     }
-
+    
     protected void format(final FileObject editedFile) {
-        this.caretPos = EditorRegistry.lastFocusedComponent().getCaretPosition();
-        String selectedStr = EditorRegistry.lastFocusedComponent().getSelectedText();
+        final JTextComponent editor = EditorRegistry.lastFocusedComponent();
+        String selectedStr = editor.getSelectedText();
         if (selectedStr == null || selectedStr.trim().length() == 0) {
             selectedStr = Util.getClipboardString();
         }
-        final int selectionStart = EditorRegistry.lastFocusedComponent().getSelectionStart();
-        final int selectionEnd = EditorRegistry.lastFocusedComponent().getSelectionEnd();
-                
-        final String res = getFormatted(editedFile, selectedStr, Util.selectAll());
-        if (res != null) {
-            Util.setSelectedString(res);
-        } else {
-            EditorRegistry.lastFocusedComponent().setSelectionStart(selectionStart);
-            EditorRegistry.lastFocusedComponent().setSelectionEnd(selectionEnd);
-        }
-        try {
-            EditorRegistry.lastFocusedComponent().setCaretPosition(this.caretPos);
-        } catch (Exception e) {}
+        final String selection = selectedStr;
+        
+        new GenerationTask<String>("Generating code for " + editedFile.getNameExt()) {
+            @Override
+            protected String compute() {
+                return getFormatted(editedFile, selection);
+            }
+
+            @Override
+            protected void done(final String generated) {
+                final String res = askInsert(generated);
+                if (res != null) {
+                    final int offset = editor.getCaretPosition();
+                    if (Util.insertString(editor, offset, res)) {
+                        try {
+                            editor.setCaretPosition(offset + res.length());
+                        } catch (Exception e) {}
+                    }
+                }
+            }
+        }.schedule();
     }
     
     @Override
     public void actionPerformed(ActionEvent e) {
-        Lookup.Provider provider = Util.getCurrentEditor();
-        DataObject dataObject = provider.getLookup().lookup(DataObject.class);
-        FileObject fileObject = provider.getLookup().lookup(FileObject.class);
-        if (null != dataObject || null != fileObject) {
-            final FileObject editedFile;
-            if (null != dataObject) {
-                editedFile = Util.getFileObjectWithShadowSupport(dataObject);
-            } else {
-                editedFile = fileObject;
-            }
-            if (editedFile != null && editedFile.getPath() != null) {
-                format(editedFile);
-                return ;
-            }
+        final FileObject editedFile = Util.getCurrentFile();
+        if (editedFile != null && editedFile.getPath() != null) {
+            format(editedFile);
+            return ;
         }
         
         Util.err("Can't find file name");
     }
 
-    protected abstract int useField(final Field f, final String clsName, final String editedFileClassName);
+    protected abstract int useField(final FieldDescriptor f, final String clsName, final String editedFileClassName);
     
     protected boolean hasPart(final boolean hasPart) {
         return hasPart;
@@ -106,7 +106,7 @@ public abstract class BaseAction implements ActionListener {
         return new HashSet();
     }
     
-    protected boolean isExcluded(final Field f) {
+    protected boolean isExcluded(final FieldDescriptor f) {
         if (excludedFields.contains(f.getName())) {
             return true;
         }
@@ -116,22 +116,8 @@ public abstract class BaseAction implements ActionListener {
         return false;
     }
     
-    protected boolean addInUsed(final Field f) {
-        return !(f.getType().isArray() || 
-                f.getType().isPrimitive() || 
-                f.getType().isSynthetic() ||
-                f.getType().getName().startsWith("java.lang.")
-                );
-    }
-    
-    public static List<Field> getClassFields(final List<Field> fields, final Class cls) {
-        if (cls != null) {
-            fields.addAll(Arrays.asList(cls.getDeclaredFields()));
-            if (!Object.class.equals(cls.getSuperclass())) {
-                return getClassFields(fields, cls.getSuperclass());
-            }
-        }
-        return fields;
+    protected boolean addInUsed(final FieldDescriptor f) {
+        return f.isImportable();
     }
     
     protected String getExtends (final String editedFileClassName) {
@@ -145,13 +131,14 @@ public abstract class BaseAction implements ActionListener {
         return "public class " + editedFileClassName + getExtends(editedFileClassName);
     }
     
-    protected boolean fillFields(final SourceGroup sg, final String srcClassName, final String editedFileClassName, final HashSet<String> usedClasses, final Map<String, String> fields) {
+    protected boolean fillFields(final MetadataProvider provider, final String srcClassName, final String editedFileClassName, final HashSet<String> usedClasses, final Map<String, String> fields) {
         boolean hasPart = false;
-        Class srcClass = Util.loadClassAny(srcClassName, sg.getRootFolder());
+        final EntityDescriptor srcClass = provider.describe(srcClassName);
         if (srcClass != null) {
-            for (Field f : getClassFields(new ArrayList<Field>(), srcClass)) {
+            for (FieldDescriptor f : srcClass.getAllFields()) {
+                Cancellation.check();
                 if (!isExcluded(f)) {
-                    final String clsName = f.getType().getName().toString();
+                    final String clsName = f.getTypeName();
                     final int useField = useField(f, clsName, editedFileClassName);
                     if (useField > 0) {
                         fields.put(f.getName(), clsName);
@@ -168,39 +155,39 @@ public abstract class BaseAction implements ActionListener {
     }
     
     protected void formatModelCreate(final String padding, final String modelPrefix, 
-        final StringBuilder sb, 
-        final SourceGroup sg, 
+        final CodeWriter sb, 
+        final MetadataProvider provider, 
         final String srcClassName, 
         final String editedFileClassNameFull,
         final String editedFileClassName) {
 
-        final String srcClassNameShort = Util.getClassNameShort(srcClassName);
+        final String srcClassNameShort = ClassNames.getClassNameShort(srcClassName);
         final String modelName = modelPrefix + srcClassNameShort + "Model";
         sb.append(modelName).append(".create()").append("\n");
 
         final HashSet<String> usedClasses = makeUsedClasses();
         final LinkedHashMap<String, String> fields = new LinkedHashMap<>();
-        boolean hasPart = fillFields(sg, srcClassName, editedFileClassName, usedClasses, fields);
+        boolean hasPart = fillFields(provider, srcClassName, editedFileClassName, usedClasses, fields);
         for (String f : fields.keySet()) {
-            sb.append(padding).append(".set").append(Util.toCamelCase(f)).append("(").append("the").append(Util.toCamelCase(f)).append(")").append("\n");
+            sb.append(padding).append(".set").append(ClassNames.toCamelCase(f)).append("(").append("the").append(ClassNames.toCamelCase(f)).append(")").append("\n");
         }
         if (hasPart) {
             sb.append(padding).append(".setPart(");
             final ModifyModelAction mmodel = new ModifyModelAction();
-            mmodel.formatModelCreate(padding + "    ", "Modify", sb, sg, srcClassName, editedFileClassNameFull, editedFileClassName);
+            mmodel.formatModelCreate(padding + "    ", "Modify", sb, provider, srcClassName, editedFileClassNameFull, editedFileClassName);
             sb.append(padding).append(")\n");
         }
     }
     
-    protected void formatJavaModel(final StringBuilder sb, 
-            final SourceGroup sg, 
+    protected void formatJavaModel(final CodeWriter sb, 
+            final MetadataProvider provider, 
             final String srcClassName, 
             final String editedFileClassNameFull,
             final String editedFileClassName) {
 
         final HashSet<String> usedClasses = makeUsedClasses();
         final LinkedHashMap<String, String> fields = new LinkedHashMap<>();
-            boolean hasPart = fillFields(sg, srcClassName, editedFileClassName, usedClasses, fields);
+            boolean hasPart = fillFields(provider, srcClassName, editedFileClassName, usedClasses, fields);
             
             usedClasses.remove(editedFileClassNameFull);
             for (Iterator<String> it = usedClasses.iterator(); it.hasNext();) {
@@ -213,16 +200,16 @@ public abstract class BaseAction implements ActionListener {
             sb.append("\n");
             addConstructor(editedFileClassName, sb);
             if (hasPart(hasPart)) {
-                sb.append("    private Modify").append(Util.getClassNameShort(srcClassName)).append("Model part = Modify").append(Util.getClassNameShort(srcClassName)).append("Model.create ()").append(";").append("\n");
+                sb.append("    private Modify").append(ClassNames.getClassNameShort(srcClassName)).append("Model part = Modify").append(ClassNames.getClassNameShort(srcClassName)).append("Model.create ()").append(";").append("\n");
                 sb.append("\n");
-                appendGetter(editedFileClassName, sb, "part", "Modify" + Util.getClassNameShort(srcClassName) + "Model");
+                appendGetter(editedFileClassName, sb, "part", "Modify" + ClassNames.getClassNameShort(srcClassName) + "Model");
                 sb.append("\n");
-                appendSetterPlain(editedFileClassName, sb, "part", "Modify" + Util.getClassNameShort(srcClassName) + "Model");
+                appendSetterPlain(editedFileClassName, sb, "part", "Modify" + ClassNames.getClassNameShort(srcClassName) + "Model");
                 sb.append("\n");
             }
             for (String k : fields.keySet()) {
                 final String cls = fields.get(k);
-                sb.append("    private ").append(getFieldType(Util.getClassNameShort(cls))).append(" ").append(k).append(";").append("\n");
+                sb.append("    private ").append(getFieldType(ClassNames.getClassNameShort(cls))).append(" ").append(k).append(";").append("\n");
             }
             for (String k : fields.keySet()) {
                 final String cls = fields.get(k);
@@ -239,7 +226,7 @@ public abstract class BaseAction implements ActionListener {
         return true;
     }
     
-    protected void addConstructor(final String editedFileClassName, final StringBuilder sb) {
+    protected void addConstructor(final String editedFileClassName, final CodeWriter sb) {
         if (hasConstructor(editedFileClassName)) {
             sb.append("    private ").append(editedFileClassName).append("(){}").append("\n");
             sb.append("    public static ").append(editedFileClassName).append(" create(){ ").append("\n");
@@ -249,22 +236,22 @@ public abstract class BaseAction implements ActionListener {
         }
     }
     
-    protected void appendGetter(final String editedFileClassName, final StringBuilder sb, final String paramName, final String cls) {
-        sb.append("    public ").append(getFieldType(cls)).append(" get").append(Util.toCamelCase(paramName)).append("() {").append("\n");
+    protected void appendGetter(final String editedFileClassName, final CodeWriter sb, final String paramName, final String cls) {
+        sb.append("    public ").append(getFieldType(cls)).append(" get").append(ClassNames.toCamelCase(paramName)).append("() {").append("\n");
         sb.append("        return ").append(paramName).append(";").append("\n");
         sb.append("    }").append("\n");
     }
     
-    protected void appendSetter(final String editedFileClassName, final StringBuilder sb, final String paramName, final String cls) {
+    protected void appendSetter(final String editedFileClassName, final CodeWriter sb, final String paramName, final String cls) {
         appendSetterPlain(editedFileClassName, sb, paramName, cls);
     }
     
-    private void appendSetterPlain(final String editedFileClassName, final StringBuilder sb, final String paramName, final String cls) {
-        appendSetterRaw(editedFileClassName, sb, paramName, Util.getClassNameShort(cls), "<T extends " + editedFileClassName + "> T", getSetterSet("o"));
+    private void appendSetterPlain(final String editedFileClassName, final CodeWriter sb, final String paramName, final String cls) {
+        appendSetterRaw(editedFileClassName, sb, paramName, ClassNames.getClassNameShort(cls), "<T extends " + editedFileClassName + "> T", getSetterSet("o"));
     }
     
-    protected void appendSetterRaw(final String editedFileClassName, final StringBuilder sb, final String paramName, final String cls, final String returnType, final String setterSet) {
-        sb.append("    public ").append(returnType).append(" set").append(Util.toCamelCase(paramName)).append("(final ").append(cls).append(" o) {").append("\n");
+    protected void appendSetterRaw(final String editedFileClassName, final CodeWriter sb, final String paramName, final String cls, final String returnType, final String setterSet) {
+        sb.append("    public ").append(returnType).append(" set").append(ClassNames.toCamelCase(paramName)).append("(final ").append(cls).append(" o) {").append("\n");
         sb.append("        this.").append(paramName).append(" = ").append(setterSet).append(";").append("\n");
         if (!"void".equals(returnType)) {
             sb.append("        return (T)this;").append("\n");
@@ -276,56 +263,81 @@ public abstract class BaseAction implements ActionListener {
         return "";
     }
     
-    protected String formatJava(final FileObject editedFile, final String selection, final String content) {
+    /**
+     * Appends the generated file for the source class without the end marker, see {@link #appendEnd}.
+     */
+    public void formatJavaFile(final CodeWriter sb, final MetadataProvider provider, final String srcClassName, final String editedFileClassNameFull) {
+        sb.append(GENERATED_BEGIN);
+        sb.append("package ").append(ClassNames.getPackage(editedFileClassNameFull)).append(";").append("\n");
+        sb.append("\n");
+
+        formatJavaModel(sb, provider, srcClassName, editedFileClassNameFull, ClassNames.getClassNameShort(editedFileClassNameFull));
+    }
+    
+    public static void appendEnd(final CodeWriter sb, final String comment) {
+        sb.append("//").append(comment).append("\n");
+        sb.append(GENERATED_END);
+    }
+    
+    /**
+     * @return generated code or null
+     */
+    protected String formatJava(final FileObject editedFile, final String selection) {
         final SourceGroup sg = Util.getSourceGroup(editedFile);
         if (sg != null) {
+            final MetadataProvider provider = MetadataProvider.forSourceGroup(sg);
             final String editedFileClassNameFull = Util.getClassName(editedFile);
-            final String editedFileClassName = Util.getClassNameShort(editedFileClassNameFull);
-            final String editedFilePackage = Util.getPackage(editedFileClassNameFull);
-            final StringBuilder sb = new StringBuilder();
-            if (selection != null) {
-                final String selectionClear = selection.trim();
-                final String[] selections = selectionClear.split("\\s+");
-                if (selections.length > 1) {
-                    appendGetter(editedFileClassName, sb, selections[1], selections[0]);
-                    appendSetter(editedFileClassName, sb, selections[1], selections[0]);
-                } else if (editedFileClassName.endsWith("Service")) {
-                    formatModelCreate("        ", getModelPrefix(), sb, sg, selectionClear, editedFileClassNameFull, editedFileClassName);
-                } else {
-                
-                    sb.append("//=====================GENERATED========================\n");
-                    sb.append("package ").append(editedFilePackage).append(";").append("\n");
-                    sb.append("\n");
-
-                    formatJavaModel(sb, sg, selectionClear, editedFileClassNameFull, editedFileClassName);
-                }
-            }
-            sb.append("//").append(selection).append("\n");
-            sb.append("//=====================end==============================\n");
-            caretPos = sb.length();
-            //TODO show dialog
-            Object askres = Util.ask("Copy result to clipboard?", sb.toString(), new Object[] { "Copy", "Append", "Insert", "Cancel" }, "Append");
-            if ( "Copy".equals(askres) ) {
-                if (!Util.setClipboardContents(sb.toString())) {
-                    return sb.toString() + content;
-                }
-            } else if ( "Append".equals(askres) ) {
-                if (!Util.appendClipboardContents(sb.toString())) {
-                    return sb.toString() + content;
+            final String editedFileClassName = ClassNames.getClassNameShort(editedFileClassNameFull);
+            final CodeWriter sb = CodeWriter.buffer();
+            GenerationMetrics.enter();
+            try {
+                if (selection != null) {
+                    final String selectionClear = selection.trim();
+                    final String[] selections = selectionClear.split("\\s+");
+                    if (selections.length > 1) {
+                        appendGetter(editedFileClassName, sb, selections[1], selections[0]);
+                        appendSetter(editedFileClassName, sb, selections[1], selections[0]);
+                    } else if (editedFileClassName.endsWith("Service")) {
+                        formatModelCreate("        ", getModelPrefix(), sb, provider, selectionClear, editedFileClassNameFull, editedFileClassName);
+                    } else {
+                        formatJavaFile(sb, provider, selectionClear, editedFileClassNameFull);
+                    }
                 }
-            } else if ( "Insert".equals(askres) ) {
-                return sb.toString() + content;
-            } else {
-                // return null;
+                appendEnd(sb, selection);
+                GenerationMetrics.emitted(sb.length());
+            } finally {
+                GenerationMetrics.exit(GenerationMetrics.EMIT);
             }
+            return sb.toString();
         }
         return null;
     }
     
-    private int caretPos;
+    /**
+     * Shows the generated code, called on the event thread.
+     * @return code to insert into the edited file or null
+     */
+    protected String askInsert(final String generated) {
+        //TODO show dialog
+        Object askres = Util.ask("Copy result to clipboard?", generated, new Object[] { "Copy", "Append", "Insert", "Cancel" }, "Append");
+        if ( "Copy".equals(askres) ) {
+            if (!Util.setClipboardContents(generated)) {
+                return generated;
+            }
+        } else if ( "Append".equals(askres) ) {
+            if (!Util.appendClipboardContents(generated)) {
+                return generated;
+            }
+        } else if ( "Insert".equals(askres) ) {
+            return generated;
+        } else {
+            // return null;
+        }
+        return null;
+    }
     
     protected String getFieldType(final String cls) {
-        return Util.getClassNameShort(cls);
+        return ClassNames.getClassNameShort(cls);
     }
     
     protected String getSetterSet(final String o) {
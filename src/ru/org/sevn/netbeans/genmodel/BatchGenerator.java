@@ -0,0 +1,652 @@
+/*
+ * Copyright 2018 Veronica Anokhina.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.org.sevn.netbeans.genmodel;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Generates Create/Modify/Query models, Dao and UML for a list of classes without the IDE.
+ * The generators are the same as the editor actions, classes are loaded from the given class path.
+ * <pre>
+ * java -cp genmodel.jar:&lt;netbeans api jars&gt; ru.org.sevn.netbeans.genmodel.BatchGenerator \
+ *      -cp build/classes:lib/* -d build/generated [-t target.package] [-g create,modify,query,dao,uml] [-j threads] [-u classes] [-o plantuml,mermaid,dot,json] [-f] \
+ *      [-b | -sp src/main/java] [-m] [-p entity.package]... [entity.ClassName]...
+ * </pre>
+ * With -m the Modify models keep the set fields in a presence mask instead of Optional fields, see {@link ModifyModelAction}.
+ * With -b the classes are read from the class files without loading them, with -sp from the sources analyzed by javac
+ * (the class path is of the dependencies then), see {@link MetadataProvider#forBytecode} and {@link MetadataProvider#forSources}.
+ * Classes of the -p packages (with subpackages) are used if they are annotated with Entity,
+ * for UML a diagram of every -p package is written too, split into parts of at most -u classes,
+ * the diagrams are written in every -o format (PlantUML by default).
+ * The classes are generated in parallel on a fork-join pool of -j threads, the outputs are merged in the order of the classes.
+ * The exit status is 1 if a class failed or couldn't be loaded.
+ * A class is skipped if the classes its outputs are generated from (see {@link #getSourceHash(String)})
+ * and its generated files are the same as recorded in {@link GenerationManifest}, -f regenerates everything.
+ * With -sp the descriptors analyzed from the sources are hashed, so the unchanged classes are skipped too.
+ */
+public class BatchGenerator {
+
+    public static final String CREATE = "create";
+    public static final String MODIFY = "modify";
+    public static final String QUERY = "query";
+    public static final String DAO = "dao";
+    public static final String UML = "uml";
+    public static final List<String> ALL = Arrays.asList(CREATE, MODIFY, QUERY, DAO, UML);
+
+    /**
+     * Generated file, the path is relative to the output directory.
+     */
+    public static class Output {
+        private final String path;
+        private final String hash;
+
+        public Output(final String path, final String hash) {
+            this.path = path;
+            this.hash = hash;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * @return hash of the written content, see {@link GenerationManifest#hash(byte[])}
+         */
+        public String getHash() {
+            return hash;
+        }
+    }
+
+    private final MetadataProvider provider;
+    private final File outDir;
+    private final String targetPackage;
+    private final Set<String> kinds;
+    private final int parallelism;
+    private GenerationManifest manifest;
+    private int umlPartSize = UMLAction.DEFAULT_PART_SIZE;
+    private List<DiagramEmitter> umlFormats = Collections.singletonList(DiagramEmitter.plantUml());
+    private boolean presenceMask;
+    private int skipped;
+    private int failed;
+
+    /**
+     * @param targetPackage package of the generated classes, null for the package of the source class
+     */
+    public BatchGenerator(final MetadataProvider provider, final File outDir, final String targetPackage, final Collection<String> kinds) {
+        this(provider, outDir, targetPackage, kinds, Runtime.getRuntime().availableProcessors());
+    }
+
+    public BatchGenerator(final MetadataProvider provider, final File outDir, final String targetPackage, final Collection<String> kinds, final int parallelism) {
+        this.provider = provider;
+        this.outDir = outDir;
+        this.targetPackage = targetPackage;
+        this.kinds = new LinkedHashSet<>(kinds);
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * @param manifest manifest to skip unchanged classes and to record the outputs in, null to generate all
+     */
+    public void setManifest(final GenerationManifest manifest) {
+        this.manifest = manifest;
+    }
+
+    public GenerationManifest getManifest() {
+        return manifest;
+    }
+
+    /**
+     * @return number of classes skipped as up to date by the last {@link #generate(List)}
+     */
+    public int getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * @return number of classes that failed or couldn't be loaded in the last {@link #generate(List)}
+     */
+    public int getFailed() {
+        return failed;
+    }
+
+    /**
+     * @return generator settings the outputs depend on
+     */
+    public String getConfig() {
+        final List<String> formats = new ArrayList<>();
+        for (final DiagramEmitter e : umlFormats) {
+            formats.add(e.getName());
+        }
+        return join(kinds) + "|" + (targetPackage == null ? "" : targetPackage) + "|" + join(formats) + (presenceMask ? "|mask" : "");
+    }
+
+    /**
+     * @return hash of every class the outputs are generated from: the class, its superclasses, the models and join targets
+     * the Dao looks for and the classes on the UML diagram; the bytecode is hashed or the descriptor if there is no class file,
+     * null if the class is not found
+     */
+    public String getSourceHash(final String srcClassName) {
+        final EntityDescriptor src = provider.describe(srcClassName);
+        if (src == null) {
+            return null;
+        }
+        final Set<String> classes = new TreeSet<>();
+        for (EntityDescriptor d = src; d != null; d = d.getSuperclass()) {
+            classes.add(d.getName());
+        }
+        if (kinds.contains(DAO)) {
+            final String pkg = targetPackage == null ? src.getPackageName() : targetPackage;
+            for (final String prefix : new String[] {".Create", ".Modify", ".AbstractQuery", ".Query", ".BasicQuery"}) {
+                classes.add(pkg + prefix + src.getSimpleName() + "Model");
+            }
+            for (final FieldDescriptor f : src.getAllFields()) {
+                final String join = f.getCodegen() == null ? null : f.getCodegen().getJoinEntityOrField();
+                if (join != null && join.length() > 0) {
+                    classes.add(join);
+                    classes.add(src.getPackageName() + "." + join);
+                }
+            }
+        }
+        if (kinds.contains(UML)) {
+            for (final ClassGraph.Node n : UMLAction.classDiagram(src, src.getPackageName()).getNodes()) {
+                classes.add(n.getName());
+            }
+        }
+        final MessageDigest md = GenerationManifest.newDigest();
+        for (final String n : classes) {
+            if (n.startsWith("java.")) {
+                continue;
+            }
+            md.update(n.getBytes(StandardCharsets.UTF_8));
+            final byte[] bytes = provider.getBytecode(n);
+            if (bytes != null) {
+                md.update(bytes);
+            } else {
+                final EntityDescriptor d = provider.describe(n);
+                if (d != null) {
+                    md.update(getSignature(d).getBytes(StandardCharsets.UTF_8));
+                }
+            }
+        }
+        return GenerationManifest.toHex(md.digest());
+    }
+
+    /**
+     * @return everything the generators read from the descriptor of a class without the class file
+     */
+    private static String getSignature(final EntityDescriptor d) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(d.getClassType()).append(' ').append(d.isAbstract()).append(' ').append(d.getPersistencePackage());
+        sb.append(" extends ").append(d.getSuperclass() == null ? "" : d.getSuperclass().getName());
+        for (final EntityDescriptor i : d.getInterfaces()) {
+            sb.append(' ').append(i.getName());
+        }
+        for (final FieldDescriptor f : d.getFields()) {
+            sb.append('\n').append(f.getModifiers()).append(' ').append(f.getTypeName()).append(' ').append(f.getName())
+                    .append(' ').append(f.getColumns()).append(' ').append(f.getCodegen());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Generates the files for the class into the output directory, every file is streamed to disk as it's generated.
+     */
+    public List<Output> format(final String srcClassName) throws IOException {
+        final List<Output> ret = new ArrayList<>();
+        final EntityDescriptor src = provider.describe(srcClassName);
+        if (src == null) {
+            return ret;
+        }
+        final String pkg = targetPackage == null ? src.getPackageName() : targetPackage;
+        for (final Map.Entry<String, BaseAction> t : getJavaTargets(kinds, pkg, src.getSimpleName(), presenceMask).entrySet()) {
+            ret.add(formatJava(t.getValue(), srcClassName, t.getKey()));
+        }
+        if (kinds.contains(UML)) {
+            final ClassGraph classes = UMLAction.classDiagram(src, src.getPackageName());
+            for (final DiagramEmitter e : umlFormats) {
+                ret.add(write(src.getName() + e.getExtension(), e.of(classes)));
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @param pkg package of the generated classes
+     * @param name simple name of the source class
+     * @return generator of every Java file of the kinds by the full name of the generated class, the Dao is the last
+     */
+    public static Map<String, BaseAction> getJavaTargets(final Collection<String> kinds, final String pkg, final String name) {
+        return getJavaTargets(kinds, pkg, name, false);
+    }
+
+    /**
+     * @param presenceMask true for the Modify models with the presence mask, see {@link ModifyModelAction#ModifyModelAction(boolean)}
+     */
+    public static Map<String, BaseAction> getJavaTargets(final Collection<String> kinds, final String pkg, final String name, final boolean presenceMask) {
+        final Map<String, BaseAction> ret = new LinkedHashMap<>();
+        if (kinds.contains(CREATE)) {
+            ret.put(pkg + ".Create" + name + "Model", new CreateModelAction());
+        }
+        if (kinds.contains(MODIFY)) {
+            ret.put(pkg + ".Modify" + name + "Model", new ModifyModelAction(presenceMask));
+        }
+        if (kinds.contains(QUERY)) {
+            ret.put(pkg + ".AbstractQuery" + name + "Model", new QueryModelAction());
+            ret.put(pkg + ".Query" + name + "Model", new QueryModelAction());
+        }
+        if (kinds.contains(DAO)) {
+            ret.put(pkg + "." + name + "Dao", new DaoAction(presenceMask));
+        }
+        return ret;
+    }
+
+    private Output formatJava(final BaseAction action, final String srcClassName, final String targetClassName) throws IOException {
+        return write(targetClassName.replace('.', '/') + ".java", new CodeWriter.Emitter() {
+            @Override
+            public void emit(final CodeWriter out) {
+                action.formatJavaFile(out, provider, srcClassName, targetClassName);
+                BaseAction.appendEnd(out, srcClassName);
+            }
+        });
+    }
+
+    /**
+     * @param path file path relative to the output directory
+     */
+    public Output write(final String path, final CodeWriter.Emitter emitter) throws IOException {
+        final File out = new File(outDir, path);
+        out.getParentFile().mkdirs();
+        final MessageDigest md = GenerationManifest.newDigest();
+        GenerationMetrics.enter();
+        try (final FileChannel channel = FileChannel.open(out.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+                final CodeWriter w = CodeWriter.of(new DigestOutputStream(Channels.newOutputStream(channel), md))) {
+            emitter.emit(w);
+            GenerationMetrics.emitted(w.length());
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        } finally {
+            GenerationMetrics.exit(GenerationMetrics.EMIT);
+        }
+        return new Output(path, GenerationManifest.toHex(md.digest()));
+    }
+
+    /**
+     * @param presenceMask true to generate the Modify models with the presence mask instead of the Optional fields
+     */
+    public void setPresenceMask(final boolean presenceMask) {
+        this.presenceMask = presenceMask;
+    }
+
+    /**
+     * @param umlPartSize maximum number of classes on a package diagram before it's split into parts, at least 1
+     */
+    public void setUmlPartSize(final int umlPartSize) {
+        if (umlPartSize < 1) {
+            throw new IllegalArgumentException("Part size must be at least 1: " + umlPartSize);
+        }
+        this.umlPartSize = umlPartSize;
+    }
+
+    /**
+     * @param umlFormats formats every diagram is written in, the graph of the classes is built once for all of them
+     */
+    public void setUmlFormats(final List<DiagramEmitter> umlFormats) {
+        this.umlFormats = umlFormats;
+    }
+
+    /**
+     * Writes the diagrams of the packages with all their classes if UML is generated,
+     * see {@link UMLAction#writePackageDiagrams}.
+     */
+    public List<File> generatePackageDiagrams(final ClassIndex index, final List<String> packages) throws IOException {
+        final List<File> ret = new ArrayList<>();
+        if (kinds.contains(UML)) {
+            try (final DiagramWriter writer = new DiagramWriter(outDir, parallelism, 64)) {
+                for (final String pkg : packages) {
+                    for (final String path : UMLAction.writePackageDiagrams(writer, provider, index, pkg, umlPartSize, umlFormats)) {
+                        ret.add(new File(outDir, path));
+                    }
+                }
+            }
+        }
+        return ret;
+    }
+
+    public List<File> generate(final List<String> classNames) throws IOException {
+        final List<Result> results;
+        if (parallelism == 1 || classNames.size() < 2) {
+            results = new ArrayList<>();
+            for (final String n : classNames) {
+                results.add(generate(n));
+            }
+        } else {
+            final ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                results = pool.invoke(new GenerateTask(this, classNames, 0, classNames.size()));
+            } finally {
+                pool.shutdown();
+            }
+        }
+        final List<File> ret = new ArrayList<>();
+        skipped = 0;
+        failed = 0;
+        for (final Result r : results) {
+            if (r.skipped) {
+                skipped++;
+            }
+            if (r.error != null) {
+                System.err.println("Can't generate " + r.className + ": " + r.error);
+                failed++;
+            } else if (r.files.isEmpty()) {
+                System.err.println("Can't load source class:" + r.className);
+                failed++;
+            }
+            ret.addAll(r.files);
+        }
+        if (manifest != null) {
+            manifest.save();
+        }
+        return ret;
+    }
+
+    private Result generate(final String className) {
+        final Result ret = new Result(className);
+        try {
+            final String sourceHash = manifest == null ? null : getSourceHash(className);
+            if (manifest != null) {
+                final List<File> upToDate = manifest.getUpToDate(className, sourceHash);
+                if (upToDate != null) {
+                    ret.files.addAll(upToDate);
+                    ret.skipped = true;
+                    return ret;
+                }
+            }
+            final List<Output> outputs = format(className);
+            for (final Output o : outputs) {
+                ret.files.add(new File(outDir, o.getPath()));
+            }
+            if (manifest != null) {
+                manifest.update(className, outputs.isEmpty() ? null : sourceHash, outputs);
+            }
+        } catch (IOException | RuntimeException ex) {
+            ret.error = ex;
+            if (manifest != null) {
+                manifest.remove(className);
+            }
+        }
+        return ret;
+    }
+
+    private static class Result {
+        private final String className;
+        private final List<File> files = new ArrayList<>();
+        private Exception error;
+        private boolean skipped;
+
+        Result(final String className) {
+            this.className = className;
+        }
+    }
+
+    /**
+     * Splits the classes in halves down to one class, results keep the order of the classes.
+     */
+    private static class GenerateTask extends RecursiveTask<List<Result>> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient BatchGenerator generator;
+        private final transient List<String> classNames;
+        private final int from;
+        private final int to;
+
+        GenerateTask(final BatchGenerator generator, final List<String> classNames, final int from, final int to) {
+            this.generator = generator;
+            this.classNames = classNames;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<Result> compute() {
+            if (to - from <= 1) {
+                final List<Result> ret = new ArrayList<>();
+                if (to > from) {
+                    ret.add(generator.generate(classNames.get(from)));
+                }
+                return ret;
+            }
+            final int mid = (from + to) >>> 1;
+            final GenerateTask left = new GenerateTask(generator, classNames, from, mid);
+            final GenerateTask right = new GenerateTask(generator, classNames, mid, to);
+            right.fork();
+            final List<Result> ret = left.compute();
+            ret.addAll(right.join());
+            return ret;
+        }
+    }
+
+    /**
+     * @param manifest known entities are taken from the manifest without loading the class, may be null
+     * @return classes given by name and the entities of the packages
+     */
+    public static List<String> findClasses(final MetadataProvider provider, final GenerationManifest manifest, final ClassIndex index, final List<String> packages, final List<String> classes) {
+        final LinkedHashSet<String> ret = new LinkedHashSet<>();
+        if (packages.size() > 0) {
+            for (final String pkg : packages) {
+                for (final String n : index.getClasses(pkg)) {
+                    final byte[] bytes = manifest == null ? null : provider.getBytecode(n);
+                    final String hash = bytes == null ? null : GenerationManifest.hash(bytes);
+                    Boolean entity = manifest == null ? null : manifest.isEntity(n, hash);
+                    if (entity == null) {
+                        final EntityDescriptor d = provider.describe(n);
+                        entity = d != null && d.isEntity();
+                        if (manifest != null) {
+                            manifest.setEntity(n, hash, entity);
+                        }
+                    }
+                    if (entity) {
+                        ret.add(n);
+                    }
+                }
+            }
+        }
+        ret.addAll(classes);
+        return new ArrayList<>(ret);
+    }
+
+    public static List<File> toFiles(final String classPath) {
+        final List<File> ret = new ArrayList<>();
+        for (final String p : classPath.split(File.pathSeparator)) {
+            if (p.endsWith(File.separator + "*") || p.equals("*")) {
+                final File[] jars = new File(p.substring(0, p.length() - 1)).getAbsoluteFile().listFiles();
+                if (jars != null) {
+                    Arrays.sort(jars);
+                    for (final File j : jars) {
+                        if (j.getName().endsWith(".jar")) {
+                            ret.add(j);
+                        }
+                    }
+                }
+            } else if (p.length() > 0) {
+                ret.add(new File(p));
+            }
+        }
+        return ret;
+    }
+
+    private static void usage() {
+        System.err.println("usage: BatchGenerator -cp <class path> -d <output dir> [-t <target package>] [-g " + join(ALL) + "] [-j <threads>] [-u <classes per diagram>] [-o " + join(DiagramEmitter.ALL) + "] [-f] [-b | -sp <source path>] [-m] [-p <package>]... [class]...");
+    }
+
+    /**
+     * @param names comma separated kinds of {@link #ALL}
+     * @throws IllegalArgumentException if a kind is unknown
+     */
+    public static List<String> forKinds(final String names) {
+        final List<String> ret = new ArrayList<>();
+        for (final String n : names.toLowerCase().split(",")) {
+            if (n.trim().length() > 0) {
+                if (!ALL.contains(n.trim())) {
+                    throw new IllegalArgumentException("Unknown kind: " + n.trim() + ", expected " + ALL);
+                }
+                ret.add(n.trim());
+            }
+        }
+        return ret;
+    }
+
+    private static int parseInt(final String option, final String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Not a number for " + option + ": " + value);
+        }
+    }
+
+    private static String join(final Collection<String> values) {
+        final StringBuilder sb = new StringBuilder();
+        for (final String v : values) {
+            if (sb.length() > 0) {
+                sb.append(",");
+            }
+            sb.append(v);
+        }
+        return sb.toString();
+    }
+
+    public static void main(final String[] args) throws Exception {
+        String classPath = null;
+        File outDir = null;
+        String targetPackage = null;
+        List<String> kinds = ALL;
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        int umlPartSize = UMLAction.DEFAULT_PART_SIZE;
+        List<DiagramEmitter> umlFormats = null;
+        boolean force = false;
+        boolean bytecode = false;
+        boolean presenceMask = false;
+        String sourcePath = null;
+        final List<String> packages = new ArrayList<>();
+        final List<String> classes = new ArrayList<>();
+        final int failed;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                final String a = args[i];
+                final boolean hasValue = i + 1 < args.length;
+                if (("-cp".equals(a) || "-classpath".equals(a)) && hasValue) {
+                    classPath = args[++i];
+                } else if ("-d".equals(a) && hasValue) {
+                    outDir = new File(args[++i]);
+                } else if ("-t".equals(a) && hasValue) {
+                    targetPackage = args[++i];
+                } else if ("-g".equals(a) && hasValue) {
+                    kinds = forKinds(args[++i]);
+                } else if ("-j".equals(a) && hasValue) {
+                    parallelism = parseInt(a, args[++i]);
+                } else if ("-u".equals(a) && hasValue) {
+                    umlPartSize = parseInt(a, args[++i]);
+                } else if ("-o".equals(a) && hasValue) {
+                    umlFormats = DiagramEmitter.forNames(args[++i]);
+                } else if ("-f".equals(a)) {
+                    force = true;
+                } else if ("-m".equals(a)) {
+                    presenceMask = true;
+                } else if ("-b".equals(a)) {
+                    bytecode = true;
+                } else if ("-sp".equals(a) && hasValue) {
+                    sourcePath = args[++i];
+                } else if ("-p".equals(a) && hasValue) {
+                    packages.add(args[++i]);
+                } else if (a.startsWith("-")) {
+                    usage();
+                    System.exit(2);
+                } else {
+                    classes.add(a);
+                }
+            }
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            usage();
+            System.exit(2);
+        }
+        if (classPath == null && sourcePath == null || outDir == null || packages.isEmpty() && classes.isEmpty() || kinds.isEmpty() || umlPartSize < 1) {
+            usage();
+            System.exit(2);
+        }
+        final long start = System.currentTimeMillis();
+        final GenerationMetrics.Run metrics = GenerationMetrics.begin("batch");
+        final List<File> roots = toFiles(classPath == null ? "" : classPath);
+        final URL[] urls = new URL[roots.size()];
+        for (int i = 0; i < urls.length; i++) {
+            urls[i] = roots.get(i).toURI().toURL();
+        }
+        try (final URLClassLoader loader = new URLClassLoader(urls, BatchGenerator.class.getClassLoader())) {
+            final MetadataProvider provider;
+            if (sourcePath != null) {
+                provider = MetadataProvider.forSources(toFiles(sourcePath), roots);
+            } else if (bytecode) {
+                provider = MetadataProvider.forBytecode(MetadataProvider.forClassLoader(loader));
+            } else {
+                provider = MetadataProvider.forClassLoader(loader);
+            }
+            final BatchGenerator generator = new BatchGenerator(provider, outDir, targetPackage, kinds, parallelism);
+            if (umlFormats != null) {
+                generator.setUmlFormats(umlFormats);
+            }
+            generator.setPresenceMask(presenceMask);
+            final GenerationManifest manifest = force ? 
+                    GenerationManifest.create(outDir, generator.getConfig()) : 
+                    GenerationManifest.load(outDir, generator.getConfig());
+            generator.setManifest(manifest);
+            generator.setUmlPartSize(umlPartSize);
+            final ClassIndex index = packages.isEmpty() ? null : ClassIndex.scan(sourcePath == null ? roots : toFiles(sourcePath));
+            final List<String> classNames = findClasses(provider, manifest, index, packages, classes);
+            final List<File> files = generator.generate(classNames);
+            if (index != null) {
+                files.addAll(generator.generatePackageDiagrams(index, packages));
+            }
+            System.out.println("Generated " + files.size() + " files for " + classNames.size() + " classes (" + generator.getSkipped() + " up to date) in " + (System.currentTimeMillis() - start) + " ms");
+            failed = generator.getFailed();
+        }
+        metrics.end();
+        if (failed > 0) {
+            System.err.println("Failed " + failed + " classes");
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2018 Veronica Anokhina.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.org.sevn.netbeans.genmodel;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Cancellation check of the long generation loops, doesn't depend on NetBeans
+ * so the generators run in {@link BatchGenerator} and {@link ModelProcessor} too.
+ */
+public final class Cancellation {
+
+    private Cancellation() {
+    }
+
+    /**
+     * @throws CancellationException if the generation thread is interrupted, see {@link GenerationTask#cancel()}
+     */
+    public static void check() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException();
+        }
+    }
+}
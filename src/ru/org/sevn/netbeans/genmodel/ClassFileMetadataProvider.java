@@ -0,0 +1,268 @@
+/*
+ * Copyright 2018 Veronica Anokhina.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.org.sevn.netbeans.genmodel;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import ru.org.sevn.netbeans.genmodel.ClassFileReader.AnnotationValues;
+import ru.org.sevn.netbeans.genmodel.ClassFileReader.Member;
+
+/**
+ * Descriptors read from the class files of another provider, see {@link MetadataProvider#forBytecode(MetadataProvider)}.
+ * No class is loaded or initialized: the fields, their types and the runtime visible annotations come from the bytes,
+ * the defaults of the annotation attributes from the class files of the annotation types.
+ */
+final class ClassFileMetadataProvider extends MetadataProvider {
+
+    private static final String[] PERSISTENCE = new String[] {"javax.persistence.", "jakarta.persistence."};
+    private static final int ACC_INTERFACE = 0x0200;
+    private static final int ACC_ABSTRACT = 0x0400;
+    private static final int ACC_ENUM = 0x4000;
+    private static final Object NOT_FOUND = new Object();
+
+    private final MetadataProvider classes;
+    private final String codegenClassName;
+    private final ConcurrentHashMap<String, Object> descriptors = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Object> annotationTypes = new ConcurrentHashMap<>();
+
+    ClassFileMetadataProvider(final MetadataProvider classes) {
+        this.classes = classes;
+        this.codegenClassName = App.instance().getCodeGenClassName();
+    }
+
+    @Override
+    public Class loadClass(final String className) {
+        return null;
+    }
+
+    @Override
+    public byte[] getBytecode(final String className) {
+        GenerationMetrics.enter();
+        try {
+            return classes.getBytecode(className);
+        } finally {
+            GenerationMetrics.exit(GenerationMetrics.LOAD);
+        }
+    }
+
+    @Override
+    public EntityDescriptor describe(final String className) {
+        if (className == null || className.startsWith("[")) {
+            return null;
+        }
+        final Object d = descriptors.get(className);
+        if (d != null) {
+            GenerationMetrics.cacheHit();
+            return d == NOT_FOUND ? null : (EntityDescriptor) d;
+        }
+        final ClassFileReader reader = read(className);
+        final EntityDescriptor ret = reader == null ? null : describe(reader);
+        descriptors.put(className, ret == null ? NOT_FOUND : ret);
+        return ret;
+    }
+
+    private ClassFileReader read(final String className) {
+        final byte[] bytes = getBytecode(className);
+        if (bytes == null) {
+            return null;
+        }
+        GenerationMetrics.enter();
+        try {
+            return new ClassFileReader(bytes, true);
+        } catch (IOException | RuntimeException ex) {
+            return null;
+        } finally {
+            GenerationMetrics.exit(GenerationMetrics.REFLECT);
+        }
+    }
+
+    private EntityDescriptor describe(final ClassFileReader reader) {
+        final String name = reader.getName();
+        final int access = reader.getAccessFlags();
+        final String classType;
+        if ((access & ACC_INTERFACE) != 0) {
+            classType = "interface";
+        } else if ((access & ACC_ENUM) != 0) {
+            classType = "enum";
+        } else {
+            classType = "class";
+        }
+        String persistence = null;
+        for (final AnnotationValues a : reader.getAnnotations()) {
+            if (persistence == null) {
+                persistence = EntityDescriptor.getPersistencePackage(a.getType());
+            }
+        }
+        final String superName = reader.getSuperName();
+        final EntityDescriptor superclass = superName == null || "java.lang.Object".equals(superName) ? null : describeOrUnresolved(superName);
+        final List<EntityDescriptor> interfaces = new ArrayList<>();
+        for (final String i : reader.getInterfaces()) {
+            interfaces.add(describeOrUnresolved(i));
+        }
+        final List<FieldDescriptor> fields = new ArrayList<>();
+        GenerationMetrics.enter();
+        try {
+            for (final Member f : reader.getFields()) {
+                fields.add(new FieldDescriptor(f.getName(), ClassFileReader.toClassName(f.getDescriptor()), f.getAccessFlags(),
+                        getColumns(f), getCodegen(f), this));
+            }
+        } finally {
+            GenerationMetrics.exit(GenerationMetrics.ANNOTATIONS);
+        }
+        final String simpleName = name.substring(name.lastIndexOf('.') + 1);
+        return new EntityDescriptor(name,
+                simpleName.substring(simpleName.lastIndexOf('$') + 1),
+                ClassNames.getPackage(name),
+                classType,
+                (access & ACC_ABSTRACT) != 0,
+                persistence,
+                superclass,
+                interfaces,
+                fields);
+    }
+
+    private EntityDescriptor describeOrUnresolved(final String className) {
+        final EntityDescriptor ret = describe(className);
+        return ret == null ? EntityDescriptor.unresolved(className) : ret;
+    }
+
+    /**
+     * @return the attributes with their defaults by name, null if the annotation type isn't found
+     */
+    private Map<String, Object> getAttributes(final String annotationType) {
+        Object ret = annotationTypes.get(annotationType);
+        if (ret == null) {
+            final ClassFileReader reader = read(annotationType);
+            if (reader == null) {
+                ret = NOT_FOUND;
+            } else {
+                final Map<String, Object> attributes = new HashMap<>();
+                for (final Member m : reader.getMethods()) {
+                    if (m.getDescriptor().startsWith("()")) {
+                        attributes.put(m.getName(), m.getDefaultValue());
+                    }
+                }
+                ret = attributes;
+            }
+            annotationTypes.put(annotationType, ret);
+        }
+        return ret == NOT_FOUND ? null : (Map<String, Object>) ret;
+    }
+
+    private Map<String, Object> getValues(final AnnotationValues a) {
+        final Map<String, Object> attributes = getAttributes(a.getType());
+        final Map<String, Object> ret = attributes == null ? new HashMap<String, Object>() : new HashMap<>(attributes);
+        ret.putAll(a.getValues());
+        return ret;
+    }
+
+    private static boolean isPersistence(final String name) {
+        for (final String p : PERSISTENCE) {
+            if (name.startsWith(p)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Same as {@link ColumnAttributes#of(java.lang.reflect.Field)}: the *Column annotations with insertable or updatable
+     * and the columns of *Columns. If the annotation type isn't found only the given attributes are known.
+     */
+    private ColumnAttributes getColumns(final Member f) {
+        boolean present = false;
+        boolean insertable = true;
+        boolean updatable = true;
+        boolean generated = false;
+        boolean id = false;
+        final List<AnnotationValues> columns = new ArrayList<>();
+        for (final AnnotationValues a : f.getAnnotations()) {
+            if (!isPersistence(a.getType())) {
+                continue;
+            }
+            if (ColumnAttributes.isGeneratedValue(a.getType())) {
+                generated = true;
+            } else if (ColumnAttributes.isId(a.getType())) {
+                id = true;
+            } else if (a.getType().endsWith("Column")) {
+                columns.add(a);
+            } else if (a.getType().endsWith("Columns")) {
+                final Object value = getValues(a).get("value");
+                if (value instanceof List) {
+                    for (final Object c : (List) value) {
+                        if (c instanceof AnnotationValues) {
+                            columns.add((AnnotationValues) c);
+                        }
+                    }
+                }
+            }
+        }
+        for (final AnnotationValues c : columns) {
+            final Map<String, Object> values = getValues(c);
+            if (!values.containsKey("insertable") && !values.containsKey("updatable")) {
+                continue;
+            }
+            present = true;
+            if (Boolean.FALSE.equals(values.get("insertable"))) {
+                insertable = false;
+            }
+            if (Boolean.FALSE.equals(values.get("updatable"))) {
+                updatable = false;
+            }
+        }
+        return ColumnAttributes.of(present, insertable, updatable, generated, id);
+    }
+
+    /**
+     * If the annotation type isn't found its defaults are unknown, searchable not set in the annotation
+     * is {@link CodegenAttributes#DEFAULT_SEARCHABLE} as declared by Codegen.
+     */
+    private CodegenAttributes getCodegen(final Member f) {
+        for (final AnnotationValues a : f.getAnnotations()) {
+            if (a.getType().equals(codegenClassName)) {
+                final Map<String, Object> values = getValues(a);
+                final Object s = values.get("searchable");
+                final boolean searchable;
+                if (s instanceof Boolean) {
+                    searchable = (Boolean) s;
+                } else {
+                    searchable = getAttributes(a.getType()) == null ? CodegenAttributes.DEFAULT_SEARCHABLE : false;
+                }
+                return new CodegenAttributes(
+                        searchable,
+                        str(values, "getterPrefix"),
+                        str(values, "searchFieldName"),
+                        str(values, "operation"),
+                        str(values, "queryExpression"),
+                        str(values, "joinType"),
+                        str(values, "joinEntityOrField"),
+                        str(values, "joinAlias"),
+                        str(values, "joinOnExpression"),
+                        str(values, "sortKey"));
+            }
+        }
+        return null;
+    }
+
+    private static String str(final Map<String, Object> values, final String name) {
+        final Object v = values.get(name);
+        return v == null ? null : v.toString();
+    }
+}
@@ -0,0 +1,368 @@
+/*
+ * Copyright 2018 Veronica Anokhina.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.org.sevn.netbeans.genmodel;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the header of a class file without loading the class,
+ * with the fields, methods and runtime visible annotations if asked.
+ */
+public class ClassFileReader {
+
+    private static final String RUNTIME_VISIBLE_ANNOTATIONS = "RuntimeVisibleAnnotations";
+    private static final String ANNOTATION_DEFAULT = "AnnotationDefault";
+
+    /**
+     * Annotation with the values given in the class file, the defaults are in the {@link Member#getDefaultValue()}
+     * of the methods of the annotation type.
+     * A value is a Boolean, Character, Byte, Short, Integer, Long, Float, Double or String,
+     * the name of the constant for an enum, the class name for a class, an AnnotationValues or a List of values.
+     */
+    public static final class AnnotationValues {
+        private final String type;
+        private final Map<String, Object> values;
+
+        AnnotationValues(final String type, final Map<String, Object> values) {
+            this.type = type;
+            this.values = Collections.unmodifiableMap(values);
+        }
+
+        /**
+         * @return binary name of the annotation type
+         */
+        public String getType() {
+            return type;
+        }
+
+        public Map<String, Object> getValues() {
+            return values;
+        }
+    }
+
+    /**
+     * Field or method.
+     */
+    public static final class Member {
+        private final int accessFlags;
+        private final String name;
+        private final String descriptor;
+        private final List<AnnotationValues> annotations;
+        private final Object defaultValue;
+
+        Member(final int accessFlags, final String name, final String descriptor, final List<AnnotationValues> annotations, final Object defaultValue) {
+            this.accessFlags = accessFlags;
+            this.name = name;
+            this.descriptor = descriptor;
+            this.annotations = annotations;
+            this.defaultValue = defaultValue;
+        }
+
+        public int getAccessFlags() {
+            return accessFlags;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return type descriptor, see {@link ClassFileReader#toClassName(String)}
+         */
+        public String getDescriptor() {
+            return descriptor;
+        }
+
+        public List<AnnotationValues> getAnnotations() {
+            return annotations;
+        }
+
+        /**
+         * @return default value of an annotation attribute or null
+         */
+        public Object getDefaultValue() {
+            return defaultValue;
+        }
+    }
+
+    private final String[] utf8;
+    private final Object[] constants;
+    private final int[] classNameIndex;
+    private final int accessFlags;
+    private final String name;
+    private final String superName;
+    private final List<String> interfaces = new ArrayList<>();
+    private final List<Member> fields = new ArrayList<>();
+    private final List<Member> methods = new ArrayList<>();
+    private final List<AnnotationValues> annotations = new ArrayList<>();
+
+    /**
+     * Reads the header only.
+     */
+    public ClassFileReader(final byte[] bytes) throws IOException {
+        this(bytes, false);
+    }
+
+    /**
+     * @param members true to read the interfaces, fields, methods and annotations too
+     */
+    public ClassFileReader(final byte[] bytes, final boolean members) throws IOException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        if (in.readInt() != 0xCAFEBABE) {
+            throw new IOException("Not a class file");
+        }
+        in.readUnsignedShort();
+        in.readUnsignedShort();
+        final int count = in.readUnsignedShort();
+        utf8 = new String[count];
+        constants = new Object[count];
+        classNameIndex = new int[count];
+        for (int i = 1; i < count; i++) {
+            final int tag = in.readUnsignedByte();
+            switch (tag) {
+                case 1:
+                    utf8[i] = in.readUTF();
+                    break;
+                case 7:
+                    classNameIndex[i] = in.readUnsignedShort();
+                    break;
+                case 3:
+                    constants[i] = in.readInt();
+                    break;
+                case 4:
+                    constants[i] = in.readFloat();
+                    break;
+                case 5:
+                    constants[i] = in.readLong();
+                    i++;
+                    break;
+                case 6:
+                    constants[i] = in.readDouble();
+                    i++;
+                    break;
+                case 8:
+                case 16:
+                case 19:
+                case 20:
+                    in.readUnsignedShort();
+                    break;
+                case 15:
+                    in.readUnsignedByte();
+                    in.readUnsignedShort();
+                    break;
+                case 9:
+                case 10:
+                case 11:
+                case 12:
+                case 17:
+                case 18:
+                    in.readInt();
+                    break;
+                default:
+                    throw new IOException("Unknown constant pool tag " + tag);
+            }
+        }
+        accessFlags = in.readUnsignedShort();
+        name = getClassName(in.readUnsignedShort());
+        superName = getClassName(in.readUnsignedShort());
+        if (members) {
+            final int interfaceCount = in.readUnsignedShort();
+            for (int i = 0; i < interfaceCount; i++) {
+                interfaces.add(getClassName(in.readUnsignedShort()));
+            }
+            readMembers(in, fields);
+            readMembers(in, methods);
+            readAttributes(in, annotations);
+        }
+    }
+
+    private void readMembers(final DataInputStream in, final List<Member> ret) throws IOException {
+        final int count = in.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            final int access = in.readUnsignedShort();
+            final String memberName = utf8[in.readUnsignedShort()];
+            final String descriptor = utf8[in.readUnsignedShort()];
+            final List<AnnotationValues> memberAnnotations = new ArrayList<>();
+            final Object defaultValue = readAttributes(in, memberAnnotations);
+            ret.add(new Member(access, memberName, descriptor, Collections.unmodifiableList(memberAnnotations), defaultValue));
+        }
+    }
+
+    /**
+     * @return AnnotationDefault value or null
+     */
+    private Object readAttributes(final DataInputStream in, final List<AnnotationValues> ret) throws IOException {
+        Object defaultValue = null;
+        final int count = in.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            final String attr = utf8[in.readUnsignedShort()];
+            final int length = in.readInt();
+            if (RUNTIME_VISIBLE_ANNOTATIONS.equals(attr)) {
+                final int n = in.readUnsignedShort();
+                for (int j = 0; j < n; j++) {
+                    ret.add(readAnnotation(in));
+                }
+            } else if (ANNOTATION_DEFAULT.equals(attr)) {
+                defaultValue = readValue(in);
+            } else {
+                in.skipBytes(length);
+            }
+        }
+        return defaultValue;
+    }
+
+    private AnnotationValues readAnnotation(final DataInputStream in) throws IOException {
+        final String type = toClassName(utf8[in.readUnsignedShort()]);
+        final Map<String, Object> values = new LinkedHashMap<>();
+        final int count = in.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            final String valueName = utf8[in.readUnsignedShort()];
+            values.put(valueName, readValue(in));
+        }
+        return new AnnotationValues(type, values);
+    }
+
+    private Object readValue(final DataInputStream in) throws IOException {
+        final int tag = in.readUnsignedByte();
+        switch (tag) {
+            case 'Z':
+                return ((Integer) constants[in.readUnsignedShort()]) != 0;
+            case 'C':
+                return (char) ((Integer) constants[in.readUnsignedShort()]).intValue();
+            case 'B':
+                return (byte) ((Integer) constants[in.readUnsignedShort()]).intValue();
+            case 'S':
+                return (short) ((Integer) constants[in.readUnsignedShort()]).intValue();
+            case 'I':
+            case 'J':
+            case 'F':
+            case 'D':
+                return constants[in.readUnsignedShort()];
+            case 's':
+                return utf8[in.readUnsignedShort()];
+            case 'e':
+                in.readUnsignedShort();
+                return utf8[in.readUnsignedShort()];
+            case 'c':
+                return toClassName(utf8[in.readUnsignedShort()]);
+            case '@':
+                return readAnnotation(in);
+            case '[':
+                final int count = in.readUnsignedShort();
+                final List<Object> ret = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    ret.add(readValue(in));
+                }
+                return ret;
+            default:
+                throw new IOException("Unknown annotation value tag " + (char) tag);
+        }
+    }
+
+    /**
+     * @param descriptor field descriptor: I, Ljava/lang/String;, [I
+     * @return the type in the {@link Class#getName()} form: int, java.lang.String, [I
+     */
+    public static String toClassName(final String descriptor) {
+        switch (descriptor.charAt(0)) {
+            case 'Z':
+                return "boolean";
+            case 'B':
+                return "byte";
+            case 'C':
+                return "char";
+            case 'S':
+                return "short";
+            case 'I':
+                return "int";
+            case 'J':
+                return "long";
+            case 'F':
+                return "float";
+            case 'D':
+                return "double";
+            case 'V':
+                return "void";
+            case 'L':
+                return descriptor.substring(1, descriptor.length() - 1).replace('/', '.');
+            default:
+                return descriptor.replace('/', '.');
+        }
+    }
+
+    private String getClassName(final int index) {
+        if (index == 0) {
+            return null;
+        }
+        final String n = utf8[classNameIndex[index]];
+        return n == null ? null : n.replace('/', '.');
+    }
+
+    public int getAccessFlags() {
+        return accessFlags;
+    }
+
+    /**
+     * @return binary name of the class
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return binary name of the superclass, null for java.lang.Object and modules
+     */
+    public String getSuperName() {
+        return superName;
+    }
+
+    /**
+     * @return binary names of the interfaces, empty if the members weren't read
+     */
+    public List<String> getInterfaces() {
+        return interfaces;
+    }
+
+    public List<Member> getFields() {
+        return fields;
+    }
+
+    public List<Member> getMethods() {
+        return methods;
+    }
+
+    /**
+     * @return runtime visible annotations of the class
+     */
+    public List<AnnotationValues> getAnnotations() {
+        return annotations;
+    }
+
+    public static String getSuperName(final byte[] bytes) {
+        try {
+            return new ClassFileReader(bytes).getSuperName();
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+}
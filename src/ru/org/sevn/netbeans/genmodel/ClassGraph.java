@@ -0,0 +1,473 @@
+/*
+ * Copyright 2018 Veronica Anokhina.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.org.sevn.netbeans.genmodel;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Classes of a UML diagram and their relations.
+ * Every type is interned as one node, the graph is built by a breadth-first walk from the root classes,
+ * a node is expanded once however many paths (or cycles of relations) lead to it.
+ * Shown classes are numbered in the order they are found, the relations between them are kept in one edge list
+ * where the edges of a class follow each other: first its superclass and interfaces, then the types of its fields.
+ */
+public class ClassGraph {
+
+    public static final byte EXTENDS = 0;
+    public static final byte ASSOCIATION = 1;
+
+    /**
+     * Which classes are shown on the diagram, only they are walked further.
+     */
+    public interface Filter {
+        boolean accept(final EntityDescriptor type);
+    }
+
+    /**
+     * @return filter of the classes whose package contains one of the names
+     */
+    public static Filter inPackages(final String... packages) {
+        return new Filter() {
+            @Override
+            public boolean accept(final EntityDescriptor type) {
+                for (final String p : packages) {
+                    if (type.getPackageName() != null && type.getPackageName().contains(p)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @return filter of the classes of the package and its subpackages
+     */
+    public static Filter underPackage(final String pkg) {
+        return new Filter() {
+            @Override
+            public boolean accept(final EntityDescriptor type) {
+                final String p = type.getPackageName();
+                return p != null && (p.equals(pkg) || p.startsWith(pkg + "."));
+            }
+        };
+    }
+
+    public static Filter of(final Collection<Class> classes) {
+        final Set<Class> set = new HashSet<>(classes);
+        return new Filter() {
+            @Override
+            public boolean accept(final EntityDescriptor type) {
+                return set.contains(type.getType());
+            }
+        };
+    }
+
+    /**
+     * Field of a class, the type is null for the fields of an enum.
+     */
+    public static class Member {
+        private final String name;
+        private final int modifiers;
+        private final Node type;
+
+        Member(final String name, final int modifiers, final Node type) {
+            this.name = name;
+            this.modifiers = modifiers;
+            this.type = type;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getModifiers() {
+            return modifiers;
+        }
+
+        public Node getType() {
+            return type;
+        }
+    }
+
+    public static class Node {
+        private final EntityDescriptor descriptor;
+        private final List<Member> members = new ArrayList<>();
+        private int level = -1;
+        private int id = -1;
+        private int firstEdge;
+        private int edgeEnd;
+        private String displayName;
+
+        Node(final EntityDescriptor descriptor) {
+            this.descriptor = descriptor;
+        }
+
+        public EntityDescriptor getDescriptor() {
+            return descriptor;
+        }
+
+        public String getName() {
+            return descriptor.getName();
+        }
+
+        public String getSimpleName() {
+            return descriptor.getSimpleName();
+        }
+
+        public String getPackageName() {
+            return descriptor.getPackageName();
+        }
+
+        /**
+         * @return distance from the nearest root class, -1 if the node is only a type of a field
+         */
+        public int getLevel() {
+            return level;
+        }
+
+        /**
+         * @return whether the class is shown on the diagram
+         */
+        public boolean isKept() {
+            return id >= 0;
+        }
+
+        /**
+         * @return number of the shown class, -1 if it's not shown
+         */
+        public int getId() {
+            return id;
+        }
+
+        /**
+         * @return simple name, full name if another shown class has the same simple name
+         */
+        public String getDisplayName() {
+            return displayName;
+        }
+
+        /**
+         * @return index of the first edge from the class
+         */
+        public int getFirstEdge() {
+            return firstEdge;
+        }
+
+        /**
+         * @return index after the last edge from the class
+         */
+        public int getEdgeEnd() {
+            return edgeEnd;
+        }
+
+        public List<Member> getMembers() {
+            return members;
+        }
+    }
+
+    private final Filter filter;
+    private final int maxLevel;
+    private final Map<String, Node> interned = new HashMap<>();
+    private final List<Node> nodes = new ArrayList<>();
+    private int[] edgeFrom = new int[16];
+    private int[] edgeTo = new int[16];
+    private byte[] edgeKind = new byte[16];
+    private int edgeCount;
+
+    private ClassGraph(final Filter filter, final int maxLevel) {
+        this.filter = filter;
+        this.maxLevel = maxLevel;
+    }
+
+    /**
+     * @param maxLevel classes farther than maxLevel relations from the roots are not walked, -1 for no limit
+     */
+    public static ClassGraph build(final Collection<EntityDescriptor> roots, final Filter filter, final int maxLevel) {
+        final ClassGraph ret = new ClassGraph(filter, maxLevel);
+        final ArrayDeque<Node> queue = new ArrayDeque<>();
+        for (final EntityDescriptor r : roots) {
+            final Node n = ret.intern(r);
+            if (n.level < 0) {
+                n.level = 0;
+                ret.keep(n);
+                queue.add(n);
+            }
+        }
+        while (!queue.isEmpty()) {
+            Cancellation.check();
+            ret.expand(queue.poll(), queue);
+        }
+        ret.setDisplayNames();
+        return ret;
+    }
+
+    public static ClassGraph build(final Class root, final Filter filter, final int maxLevel) {
+        return build(Collections.singletonList(EntityDescriptor.of(root)), filter, maxLevel);
+    }
+
+    /**
+     * @return shown classes in the order they were found, the index is the id
+     */
+    public List<Node> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @return number of shown classes
+     */
+    public int size() {
+        return nodes.size();
+    }
+
+    public Node getNode(final int id) {
+        return nodes.get(id);
+    }
+
+    /**
+     * @return shown class or null
+     */
+    public Node getNode(final String name) {
+        final Node n = interned.get(name);
+        return n != null && n.isKept() ? n : null;
+    }
+
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    /**
+     * @return id of the class the edge starts from
+     */
+    public int getEdgeFrom(final int edge) {
+        return edgeFrom[edge];
+    }
+
+    /**
+     * @return id of the class the edge points to
+     */
+    public int getEdgeTo(final int edge) {
+        return edgeTo[edge];
+    }
+
+    /**
+     * @return {@link #EXTENDS} or {@link #ASSOCIATION}
+     */
+    public byte getEdgeKind(final int edge) {
+        return edgeKind[edge];
+    }
+
+    /**
+     * Splits the shown classes into parts of at most maxSize classes.
+     * Connected classes stay together, a bigger connected component is split by package and then into chunks
+     * in the order the classes were found, small components are packed first-fit into the first part they fit in.
+     * @param maxSize at least 1
+     * @return number of the part of every class by id, parts are numbered from 0
+     */
+    public int[] partition(final int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Part size must be at least 1: " + maxSize);
+        }
+        final int[] parent = new int[nodes.size()];
+        for (int i = 0; i < parent.length; i++) {
+            parent[i] = i;
+        }
+        for (int e = 0; e < edgeCount; e++) {
+            final int a = find(parent, edgeFrom[e]);
+            final int b = find(parent, edgeTo[e]);
+            if (a != b) {
+                parent[Math.max(a, b)] = Math.min(a, b);
+            }
+        }
+        final Map<Integer, List<Integer>> components = new LinkedHashMap<>();
+        for (int i = 0; i < parent.length; i++) {
+            final int c = find(parent, i);
+            List<Integer> lst = components.get(c);
+            if (lst == null) {
+                lst = new ArrayList<>();
+                components.put(c, lst);
+            }
+            lst.add(i);
+        }
+        final List<List<Integer>> groups = new ArrayList<>();
+        for (final List<Integer> c : components.values()) {
+            if (c.size() <= maxSize) {
+                groups.add(c);
+                continue;
+            }
+            final Map<String, List<Integer>> packages = new LinkedHashMap<>();
+            for (final Integer id : c) {
+                final String pkg = nodes.get(id).getPackageName();
+                List<Integer> lst = packages.get(pkg);
+                if (lst == null) {
+                    lst = new ArrayList<>();
+                    packages.put(pkg, lst);
+                }
+                lst.add(id);
+            }
+            for (final List<Integer> lst : packages.values()) {
+                for (int i = 0; i < lst.size(); i += maxSize) {
+                    groups.add(lst.subList(i, Math.min(lst.size(), i + maxSize)));
+                }
+            }
+        }
+        final int[] ret = new int[nodes.size()];
+        final List<Integer> sizes = new ArrayList<>();
+        for (final List<Integer> g : groups) {
+            int part = 0;
+            while (part < sizes.size() && sizes.get(part) + g.size() > maxSize) {
+                part++;
+            }
+            if (part == sizes.size()) {
+                sizes.add(0);
+            }
+            for (final Integer id : g) {
+                ret[id] = part;
+            }
+            sizes.set(part, sizes.get(part) + g.size());
+        }
+        return ret;
+    }
+
+    private static int find(final int[] parent, final int i) {
+        int r = i;
+        while (parent[r] != r) {
+            r = parent[r];
+        }
+        int n = i;
+        while (parent[n] != r) {
+            final int next = parent[n];
+            parent[n] = r;
+            n = next;
+        }
+        return r;
+    }
+
+    private Node intern(final EntityDescriptor type) {
+        Node n = interned.get(type.getName());
+        if (n == null) {
+            n = new Node(type);
+            interned.put(type.getName(), n);
+        }
+        return n;
+    }
+
+    private void keep(final Node n) {
+        if (n.id < 0 && filter.accept(n.descriptor)) {
+            n.id = nodes.size();
+            nodes.add(n);
+        }
+    }
+
+    private boolean canWalk(final Node from) {
+        return from.level + 1 < maxLevel || maxLevel < 0;
+    }
+
+    /**
+     * @return node of the related type if it's shown, the type is queued if it's reached for the first time
+     */
+    private Node visit(final Node from, final EntityDescriptor type, final ArrayDeque<Node> queue) {
+        final Node n = intern(type);
+        if (n.level < 0 && canWalk(from) && filter.accept(type)) {
+            n.level = from.level + 1;
+            keep(n);
+            queue.add(n);
+        }
+        return n.isKept() ? n : null;
+    }
+
+    private void addEdge(final Node from, final Node to, final byte kind) {
+        for (int i = from.firstEdge; i < edgeCount; i++) {
+            if (edgeTo[i] == to.id && edgeKind[i] == kind) {
+                return;
+            }
+        }
+        if (edgeCount == edgeFrom.length) {
+            final int size = edgeCount * 2;
+            edgeFrom = Arrays.copyOf(edgeFrom, size);
+            edgeTo = Arrays.copyOf(edgeTo, size);
+            edgeKind = Arrays.copyOf(edgeKind, size);
+        }
+        edgeFrom[edgeCount] = from.id;
+        edgeTo[edgeCount] = to.id;
+        edgeKind[edgeCount] = kind;
+        edgeCount++;
+    }
+
+    private void expand(final Node n, final ArrayDeque<Node> queue) {
+        final EntityDescriptor d = n.descriptor;
+        n.firstEdge = edgeCount;
+        if (canWalk(n)) {
+            final List<EntityDescriptor> exts = new ArrayList<>();
+            if (d.getSuperclass() != null) {
+                exts.add(d.getSuperclass());
+            }
+            exts.addAll(d.getInterfaces());
+            for (final EntityDescriptor s : exts) {
+                final Node sn = visit(n, s, queue);
+                if (sn != null && n.isKept()) {
+                    addEdge(n, sn, EXTENDS);
+                }
+            }
+        }
+        for (final FieldDescriptor f : d.getFields()) {
+            if (isExcluded(f)) {
+                continue;
+            }
+            final EntityDescriptor ft = f.getTypeDescriptor();
+            final Node fn = visit(n, ft, queue);
+            if (d.isEnum()) {
+                n.members.add(new Member(f.getName(), f.getModifiers(), null));
+            } else {
+                n.members.add(new Member(f.getName(), f.getModifiers(), intern(ft)));
+                if (fn != null && n.isKept()) {
+                    addEdge(n, fn, ASSOCIATION);
+                }
+            }
+        }
+        n.edgeEnd = edgeCount;
+    }
+
+    private void setDisplayNames() {
+        final Set<String> names = new HashSet<>();
+        for (final Node n : nodes) {
+            n.displayName = names.add(n.getSimpleName()) ? n.getSimpleName() : n.getName();
+        }
+    }
+
+    private static boolean isExcluded(final FieldDescriptor f) {
+        if (BaseAction.excludedFields.contains(f.getName())) {
+            return true;
+        }
+        if (f.getName().startsWith("_persistence_")) {
+            return true;
+        }
+        if (f.getName().startsWith("$VALUES")) {
+            return true;
+        }
+        return false;
+    }
+}
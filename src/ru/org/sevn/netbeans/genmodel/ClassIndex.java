@@ -0,0 +1,125 @@
+/*
+ * Copyright 2018 Veronica Anokhina.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.org.sevn.netbeans.genmodel;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import org.openide.filesystems.FileObject;
+
+/**
+ * Names of the top level classes found in class directories, jars and source folders, no class is loaded.
+ */
+public class ClassIndex {
+
+    private final List<String> classNames;
+
+    private ClassIndex(final List<String> classNames) {
+        this.classNames = classNames;
+    }
+
+    public static ClassIndex scan(final List<File> roots) throws IOException {
+        final TreeSet<String> names = new TreeSet<>();
+        for (final File root : roots) {
+            if (root.isDirectory()) {
+                scanDir(names, root, "");
+            } else if (root.isFile() && root.getName().endsWith(".jar")) {
+                scanJar(names, root);
+            }
+        }
+        return new ClassIndex(Collections.unmodifiableList(new ArrayList<>(names)));
+    }
+
+    /**
+     * @param root source group root or build output folder
+     */
+    public static ClassIndex scan(final FileObject root) {
+        final TreeSet<String> names = new TreeSet<>();
+        scanFolder(names, root, "");
+        return new ClassIndex(Collections.unmodifiableList(new ArrayList<>(names)));
+    }
+
+    private static void scanFolder(final TreeSet<String> names, final FileObject dir, final String pkg) {
+        for (final FileObject f : dir.getChildren()) {
+            if (f.isFolder()) {
+                scanFolder(names, f, pkg + f.getNameExt() + ".");
+            } else {
+                addClass(names, pkg + f.getNameExt());
+            }
+        }
+    }
+
+    private static void scanDir(final TreeSet<String> names, final File dir, final String pkg) {
+        final File[] files = dir.listFiles();
+        if (files != null) {
+            for (final File f : files) {
+                if (f.isDirectory()) {
+                    scanDir(names, f, pkg + f.getName() + ".");
+                } else {
+                    addClass(names, pkg + f.getName());
+                }
+            }
+        }
+    }
+
+    private static void scanJar(final TreeSet<String> names, final File file) throws IOException {
+        try (final JarFile jar = new JarFile(file)) {
+            for (final Enumeration<JarEntry> en = jar.entries(); en.hasMoreElements();) {
+                final JarEntry e = en.nextElement();
+                if (!e.isDirectory()) {
+                    addClass(names, e.getName().replace('/', '.'));
+                }
+            }
+        }
+    }
+
+    private static void addClass(final TreeSet<String> names, final String fileName) {
+        final int ext = fileName.endsWith(".class") ? ".class".length() : fileName.endsWith(".java") ? ".java".length() : 0;
+        if (ext > 0 && fileName.indexOf('$') < 0) {
+            final String name = fileName.substring(0, fileName.length() - ext);
+            if (!name.endsWith("package-info") && !name.endsWith("module-info")) {
+                names.add(name);
+            }
+        }
+    }
+
+    /**
+     * @return all classes, sorted by name
+     */
+    public List<String> getClasses() {
+        return classNames;
+    }
+
+    /**
+     * @return classes of the package and its subpackages, sorted by name
+     */
+    public List<String> getClasses(final String pkg) {
+        final List<String> ret = new ArrayList<>();
+        final String prefix = pkg + ".";
+        for (final String n : classNames) {
+            if (n.startsWith(prefix)) {
+                ret.add(n);
+            }
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright 2018 Veronica Anokhina.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.org.sevn.netbeans.genmodel;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.netbeans.api.java.classpath.ClassPath;
+import org.netbeans.api.project.FileOwnerQuery;
+import org.netbeans.api.project.Project;
+import org.netbeans.api.project.SourceGroup;
+import org.openide.filesystems.FileChangeAdapter;
+import org.openide.filesystems.FileEvent;
+import org.openide.filesystems.FileObject;
+import org.openide.filesystems.FileRenameEvent;
+import org.openide.filesystems.FileUtil;
+
+/**
+ * Keeps one class loader per path type and the loaded classes for every source group root.
+ * An entry is dropped when the class path changes or something is written to the project build output.
+ */
+public class ClassLoaderCache {
+
+    private static final String[] PATH_TYPES = new String[] {ClassPath.COMPILE, ClassPath.SOURCE, ClassPath.EXECUTE};
+
+    private static final Object NOT_FOUND = new Object();
+
+    private static final ClassLoaderCache instance = new ClassLoaderCache();
+
+    public static ClassLoaderCache instance() {
+        return instance;
+    }
+
+    private final ConcurrentHashMap<FileObject, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong loaderBuilds = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public Class loadClassAny(final String name, final FileObject fileInProject) {
+        if (name == null || fileInProject == null) {
+            return null;
+        }
+        final Entry entry = getEntry(fileInProject);
+        final Object cached = entry.classes.get(name);
+        if (cached != null) {
+            hits.incrementAndGet();
+            GenerationMetrics.cacheHit();
+            return cached == NOT_FOUND ? null : (Class) cached;
+        }
+        misses.incrementAndGet();
+        Class cls = null;
+        GenerationMetrics.enter();
+        try {
+            for (final String pathType : PATH_TYPES) {
+                try {
+                    cls = entry.loadClass(name, pathType);
+                    if (cls != null) {
+                        GenerationMetrics.classLoaded();
+                        break;
+                    }
+                } catch (Throwable ex) {
+                }
+            }
+        } finally {
+            GenerationMetrics.exit(GenerationMetrics.LOAD);
+        }
+        if (entry.valid) {
+            entry.classes.put(name, cls == null ? NOT_FOUND : cls);
+        }
+        return cls;
+    }
+
+    public void invalidate(final FileObject fileInProject) {
+        final Entry entry = entries.get(getRoot(fileInProject));
+        if (entry != null) {
+            entry.invalidate();
+        }
+    }
+
+    public void invalidate(final Project project) {
+        for (final Entry entry : new ArrayList<>(entries.values())) {
+            if (project == null || project.equals(entry.project)) {
+                entry.invalidate();
+            }
+        }
+    }
+
+    public void clear() {
+        invalidate((Project) null);
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getLoaderBuilds() {
+        return loaderBuilds.get();
+    }
+
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    @Override
+    public String toString() {
+        return "ClassLoaderCache{roots=" + entries.size() + ", hits=" + hits.get() + ", misses=" + misses.get() +
+                ", loaderBuilds=" + loaderBuilds.get() + ", invalidations=" + invalidations.get() + "}";
+    }
+
+    private FileObject getRoot(final FileObject fileInProject) {
+        final SourceGroup sg = Util.getSourceGroup(fileInProject);
+        if (sg != null) {
+            return sg.getRootFolder();
+        }
+        return fileInProject;
+    }
+
+    private Entry getEntry(final FileObject fileInProject) {
+        final FileObject root = getRoot(fileInProject);
+        Entry entry = entries.get(root);
+        if (entry == null) {
+            final Entry created = new Entry(root);
+            entry = entries.putIfAbsent(root, created);
+            if (entry == null) {
+                entry = created;
+                entry.listen();
+            }
+        }
+        return entry;
+    }
+
+    private class Entry extends FileChangeAdapter implements PropertyChangeListener {
+        private final FileObject root;
+        private final Project project;
+        private final Map<String, ClassPath> classPaths = new HashMap<>();
+        private final Map<String, ClassLoader> loaders = new HashMap<>();
+        private final ConcurrentHashMap<String, Object> classes = new ConcurrentHashMap<>();
+        private final List<FileObject> outputRoots = new ArrayList<>();
+        private volatile boolean valid = true;
+
+        Entry(final FileObject root) {
+            this.root = root;
+            this.project = FileOwnerQuery.getOwner(root);
+            for (final String pathType : PATH_TYPES) {
+                classPaths.put(pathType, ClassPath.getClassPath(root, pathType));
+            }
+        }
+
+        private void listen() {
+            for (final ClassPath cp : classPaths.values()) {
+                if (cp != null) {
+                    cp.addPropertyChangeListener(this);
+                }
+            }
+            // build output of the project is a folder root of the execute class path inside the project directory
+            final ClassPath execute = classPaths.get(ClassPath.EXECUTE);
+            if (execute != null && project != null) {
+                for (final FileObject r : execute.getRoots()) {
+                    if (r.isFolder() && FileUtil.isParentOf(project.getProjectDirectory(), r)) {
+                        r.addRecursiveListener(this);
+                        outputRoots.add(r);
+                    }
+                }
+            }
+        }
+
+        private synchronized ClassLoader getLoader(final String pathType) {
+            ClassLoader loader = loaders.get(pathType);
+            if (loader == null) {
+                final ClassPath cp = classPaths.get(pathType);
+                if (cp != null) {
+                    loader = cp.getClassLoader(true);
+                    loaders.put(pathType, loader);
+                    loaderBuilds.incrementAndGet();
+                }
+            }
+            return loader;
+        }
+
+        Class loadClass(final String name, final String pathType) throws ClassNotFoundException {
+            if (ClassPath.SOURCE.equals(pathType)) {
+                final ClassPath source = classPaths.get(ClassPath.SOURCE);
+                final int i = name.indexOf('$');
+                final String resourceName = (i > -1 ? name.substring(0, i) : name).replace('.', '/') + ".java";
+                if (source == null || source.findResource(resourceName) == null) {
+                    throw new ClassNotFoundException(name);
+                }
+                return loadClassFrom(name, ClassPath.EXECUTE);
+            }
+            return loadClassFrom(name, pathType);
+        }
+
+        private Class loadClassFrom(final String name, final String pathType) throws ClassNotFoundException {
+            final ClassLoader loader = getLoader(pathType);
+            if (loader == null) {
+                throw new ClassNotFoundException(name);
+            }
+            return loader.loadClass(name);
+        }
+
+        synchronized void invalidate() {
+            if (!valid) {
+                return;
+            }
+            valid = false;
+            entries.remove(root, this);
+            invalidations.incrementAndGet();
+            for (final ClassPath cp : classPaths.values()) {
+                if (cp != null) {
+                    cp.removePropertyChangeListener(this);
+                }
+            }
+            for (Iterator<FileObject> it = outputRoots.iterator(); it.hasNext();) {
+                it.next().removeRecursiveListener(this);
+            }
+            classes.clear();
+        }
+
+        @Override
+        public void propertyChange(final PropertyChangeEvent evt) {
+            if (ClassPath.PROP_ENTRIES.equals(evt.getPropertyName()) || ClassPath.PROP_ROOTS.equals(evt.getPropertyName())) {
+                invalidate();
+            }
+        }
+
+        @Override
+        public void fileDataCreated(final FileEvent fe) {
+            invalidate();
+        }
+
+        @Override
+        public void fileChanged(final FileEvent fe) {
+            invalidate();
+        }
+
+        @Override
+        public void fileDeleted(final FileEvent fe) {
+            invalidate();
+        }
+
+        @Override
+        public void fileRenamed(final FileRenameEvent fe) {
+            invalidate();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2018 Veronica Anokhina.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.org.sevn.netbeans.genmodel;
+
+/**
+ * Name helpers of the generators, don't depend on NetBeans unlike {@link Util}.
+ */
+public final class ClassNames {
+
+    private ClassNames() {
+    }
+
+    public static String toCamelCase(String s) {
+        if (s.length() > 1) {
+            return s.substring(0, 1).toUpperCase().concat(s.substring(1));
+        }
+        return s.toUpperCase();
+    }
+
+    public static String getClassNamePackage(final String className) {
+        if (className != null) {
+            final int lastPoint = className.lastIndexOf(".");
+            if (lastPoint > 0) {
+                return className.substring(0, lastPoint);
+            }
+        }
+        return null;
+    }
+    
+    public static String getClassNameShort(final String className) {
+        if (className != null) {
+            final int lastPoint = className.lastIndexOf(".");
+            if (lastPoint > 0) {
+                return className.substring(lastPoint + 1);
+            }
+        }
+        return className;
+    }
+    
+    public static String getClassNameShort(final String className, final String def) {
+        if (className != null) {
+            final int lastPoint = className.lastIndexOf(".");
+            if (lastPoint > 0) {
+                return className.substring(lastPoint + 1);
+            }
+        }
+        return def;
+    }
+
+    public static String getPackage(final String className) {
+        if (className != null) {
+            final int lastPoint = className.lastIndexOf(".");
+            if (lastPoint > 0) {
+                return className.substring(0, lastPoint);
+            }
+        }
+        return null;
+    }
+}
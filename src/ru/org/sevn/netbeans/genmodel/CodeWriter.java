@@ -0,0 +1,179 @@
+/*
+ * Copyright 2018 Veronica Anokhina.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.org.sevn.netbeans.genmodel;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Target of the generated code: an in-memory buffer for the dialog and the editor or a stream for batch generation.
+ * Write errors are thrown as {@link UncheckedIOException}.
+ */
+public abstract class CodeWriter implements Appendable, Flushable, Closeable {
+
+    /**
+     * Writes one generated file.
+     */
+    public interface Emitter {
+        void emit(final CodeWriter out);
+    }
+
+    private long length;
+
+    public static CodeWriter buffer() {
+        return new BufferCodeWriter(new StringBuilder());
+    }
+
+    public static CodeWriter of(final Writer writer) {
+        return new StreamCodeWriter(writer);
+    }
+
+    public static CodeWriter of(final OutputStream out) {
+        return of(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+    }
+
+    public static CodeWriter of(final FileChannel channel) {
+        return of(new BufferedWriter(Channels.newWriter(channel, "UTF-8")));
+    }
+
+    protected abstract void write(final CharSequence csq, final int start, final int end) throws IOException;
+
+    protected abstract void write(final char c) throws IOException;
+
+    @Override
+    public CodeWriter append(final CharSequence csq) {
+        final CharSequence s = csq == null ? "null" : csq;
+        return append(s, 0, s.length());
+    }
+
+    @Override
+    public CodeWriter append(final CharSequence csq, final int start, final int end) {
+        final CharSequence s = csq == null ? "null" : csq;
+        try {
+            write(s, start, end);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        length += end - start;
+        return this;
+    }
+
+    @Override
+    public CodeWriter append(final char c) {
+        try {
+            write(c);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        length++;
+        return this;
+    }
+
+    public CodeWriter append(final Object o) {
+        return append(String.valueOf(o));
+    }
+
+    public CodeWriter append(final int i) {
+        return append(String.valueOf(i));
+    }
+
+    /**
+     * @return number of chars written
+     */
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private static final class BufferCodeWriter extends CodeWriter {
+        private final StringBuilder sb;
+
+        BufferCodeWriter(final StringBuilder sb) {
+            this.sb = sb;
+        }
+
+        @Override
+        protected void write(final CharSequence csq, final int start, final int end) {
+            sb.append(csq, start, end);
+        }
+
+        @Override
+        protected void write(final char c) {
+            sb.append(c);
+        }
+
+        @Override
+        public String toString() {
+            return sb.toString();
+        }
+    }
+
+    private static final class StreamCodeWriter extends CodeWriter {
+        private final Writer writer;
+
+        StreamCodeWriter(final Writer writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        protected void write(final CharSequence csq, final int start, final int end) throws IOException {
+            if (csq instanceof String) {
+                writer.write((String) csq, start, end - start);
+            } else {
+                writer.append(csq, start, end);
+            }
+        }
+
+        @Override
+        protected void write(final char c) throws IOException {
+            writer.write(c);
+        }
+
+        @Override
+        public void flush() {
+            try {
+                writer.flush();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                writer.close();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2018 Veronica Anokhina.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.org.sevn.netbeans.genmodel;
+
+/**
+ * Values of the Codegen annotation of a field, see {@link CodegenUtil}.
+ * An attribute missing in the annotation type is null.
+ * sortKey is asc or desc for a field of the key of the keyset pages, the key fields are in the order of the entity fields.
+ */
+public final class CodegenAttributes {
+
+    /**
+     * searchable of a Codegen annotation that doesn't set it, the default of the annotation type.
+     */
+    public static final boolean DEFAULT_SEARCHABLE = true;
+
+    private final boolean searchable;
+    private final String getterPrefix;
+    private final String searchFieldName;
+    private final String operation;
+    private final String queryExpression;
+    private final String joinType;
+    private final String joinEntityOrField;
+    private final String joinAlias;
+    private final String joinOnExpression;
+    private final String sortKey;
+
+    public CodegenAttributes(final boolean searchable,
+            final String getterPrefix,
+            final String searchFieldName,
+            final String operation,
+            final String queryExpression,
+            final String joinType,
+            final String joinEntityOrField,
+            final String joinAlias,
+            final String joinOnExpression) {
+        this(searchable, getterPrefix, searchFieldName, operation, queryExpression, joinType, joinEntityOrField, joinAlias, joinOnExpression, null);
+    }
+
+    public CodegenAttributes(final boolean searchable,
+            final String getterPrefix,
+            final String searchFieldName,
+            final String operation,
+            final String queryExpression,
+            final String joinType,
+            final String joinEntityOrField,
+            final String joinAlias,
+            final String joinOnExpression,
+            final String sortKey) {
+        this.searchable = searchable;
+        this.getterPrefix = getterPrefix;
+        this.searchFieldName = searchFieldName;
+        this.operation = operation;
+        this.queryExpression = queryExpression;
+        this.joinType = joinType;
+        this.joinEntityOrField = joinEntityOrField;
+        this.joinAlias = joinAlias;
+        this.joinOnExpression = joinOnExpression;
+        this.sortKey = sortKey;
+    }
+
+    public boolean isSearchable() {
+        return searchable;
+    }
+
+    public String getGetterPrefix() {
+        return getterPrefix;
+    }
+
+    public String getSearchFieldName() {
+        return searchFieldName;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public String getQueryExpression() {
+        return queryExpression;
+    }
+
+    public String getJoinType() {
+        return joinType;
+    }
+
+    public String getJoinEntityOrField() {
+        return joinEntityOrField;
+    }
+
+    public String getJoinAlias() {
+        return joinAlias;
+    }
+
+    public String getJoinOnExpression() {
+        return joinOnExpression;
+    }
+
+    /**
+     * @return asc, desc, or null or empty if the field is not a sort key
+     */
+    public String getSortKey() {
+        return sortKey;
+    }
+
+    @Override
+    public String toString() {
+        return "Codegen{searchable=" + searchable + ", getterPrefix=" + getterPrefix + ", searchFieldName=" + searchFieldName +
+                ", operation=" + operation + ", queryExpression=" + queryExpression + ", joinType=" + joinType +
+                ", joinEntityOrField=" + joinEntityOrField + ", joinAlias=" + joinAlias + ", joinOnExpression=" + joinOnExpression + ", sortKey=" + sortKey + "}";
+    }
+}
@@ -16,10 +16,11 @@
 package ru.org.sevn.netbeans.genmodel;
 
 import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
-import java.util.HashMap;
-import java.util.Map;
 
 public class CodegenUtil {
     /*
@@ -50,41 +51,34 @@ public @interface Codegen {
 
     String joinOnExpression () default "";
 
+    String sortKey () default "";
+
 }    
     */
     
-    public static Map<String, Object> getCodegen(final String className, final Field f) {
+    private static final ClassValue<Accessors> accessors = new ClassValue<Accessors>() {
+        @Override
+        protected Accessors computeValue(final Class<?> type) {
+            return new Accessors(type);
+        }
+    };
+
+    public static CodegenAttributes getCodegen(final String className, final Field f) {
         Annotation[] annotations = f.getAnnotations();
-        //System.out.println("====1="+f.getName()+":" + annotations.length);
         if (annotations != null) {
             for (final Annotation a : annotations) {
-                if (a.annotationType().getName().equals(className)) { //TODO
-                    HashMap<String, Object> res = new HashMap<>();
-                    Method[] methods = a.annotationType().getDeclaredMethods();
-                    if (methods != null) {
-                        for (final Method m : methods) {
-                            try {
-                                Object v = m.invoke(a);
-                                res.put(m.getName(), v);
-                            } catch (Exception ex) {
-                            }
-                        }
-                    }
-                    return res;
+                final Accessors acc = accessors.get(a.annotationType());
+                if (acc.name.equals(className)) {
+                    return acc.read(a);
                 }
-                //System.out.println("====2="+f.getName()+":" + a + ":" + a.annotationType().getDeclaredMethods().length);
             }
         }
         return null;
     }
     
-    public static boolean isSerchable(Map<String, Object> codegen) {
+    public static boolean isSerchable(CodegenAttributes codegen) {
         if (codegen != null) {
-            Object v = codegen.get("searchable");
-            if (v instanceof Boolean) {
-                Boolean b = (Boolean)v;
-                return b;
-            }
+            return codegen.isSearchable();
         }
         return false;
     }
@@ -92,4 +86,79 @@ public @interface Codegen {
         return isSerchable(getCodegen(App.instance().getCodeGenClassName(), f));
     }
     
+    /**
+     * Method handles of the Codegen attributes, built once for each annotation type.
+     */
+    private static final class Accessors {
+        private static final MethodType GETTER = MethodType.methodType(Object.class, Annotation.class);
+
+        private final String name;
+        private final MethodHandle searchable;
+        private final MethodHandle getterPrefix;
+        private final MethodHandle searchFieldName;
+        private final MethodHandle operation;
+        private final MethodHandle queryExpression;
+        private final MethodHandle joinType;
+        private final MethodHandle joinEntityOrField;
+        private final MethodHandle joinAlias;
+        private final MethodHandle joinOnExpression;
+        private final MethodHandle sortKey;
+
+        Accessors(final Class type) {
+            this.name = type.getName();
+            this.searchable = handle(type, "searchable");
+            this.getterPrefix = handle(type, "getterPrefix");
+            this.searchFieldName = handle(type, "searchFieldName");
+            this.operation = handle(type, "operation");
+            this.queryExpression = handle(type, "queryExpression");
+            this.joinType = handle(type, "joinType");
+            this.joinEntityOrField = handle(type, "joinEntityOrField");
+            this.joinAlias = handle(type, "joinAlias");
+            this.joinOnExpression = handle(type, "joinOnExpression");
+            this.sortKey = handle(type, "sortKey");
+        }
+
+        private static MethodHandle handle(final Class type, final String attr) {
+            if (!type.isAnnotation()) {
+                return null;
+            }
+            try {
+                final Method m = type.getDeclaredMethod(attr);
+                m.setAccessible(true);
+                return MethodHandles.lookup().unreflect(m).asType(GETTER);
+            } catch (Exception ex) {
+                return null;
+            }
+        }
+
+        CodegenAttributes read(final Annotation a) {
+            final Object s = get(searchable, a);
+            return new CodegenAttributes(
+                    s instanceof Boolean ? (Boolean) s : false,
+                    str(getterPrefix, a),
+                    str(searchFieldName, a),
+                    str(operation, a),
+                    str(queryExpression, a),
+                    str(joinType, a),
+                    str(joinEntityOrField, a),
+                    str(joinAlias, a),
+                    str(joinOnExpression, a),
+                    str(sortKey, a));
+        }
+
+        private static String str(final MethodHandle h, final Annotation a) {
+            final Object v = get(h, a);
+            return v == null ? null : v.toString();
+        }
+
+        private static Object get(final MethodHandle h, final Annotation a) {
+            if (h != null) {
+                try {
+                    return (Object) h.invokeExact(a);
+                } catch (Throwable ex) {
+                }
+            }
+            return null;
+        }
+    }
 }
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2018 Veronica Anokhina.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.org.sevn.netbeans.genmodel;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+/**
+ * insertable/updatable of the javax.persistence or jakarta.persistence column annotations of a field:
+ * Column, JoinColumn and the other *Column annotations, JoinColumns is read through its value.
+ * Generated is true for a field with GeneratedValue, the id assigned by the persistence provider, id for a field with Id.
+ */
+public final class ColumnAttributes {
+
+    public static final ColumnAttributes NONE = new ColumnAttributes(false, true, true);
+
+    private static final String[] PACKAGES = new String[] {"javax.persistence.", "jakarta.persistence."};
+
+    private static final ClassValue<Reader> readers = new ClassValue<Reader>() {
+        @Override
+        protected Reader computeValue(final Class<?> type) {
+            return new Reader(type);
+        }
+    };
+
+    public static ColumnAttributes of(final Field f) {
+        final Annotation[] annotations = f.getAnnotations();
+        if (annotations == null || annotations.length == 0) {
+            return NONE;
+        }
+        boolean present = false;
+        boolean insertable = true;
+        boolean updatable = true;
+        boolean generated = false;
+        boolean id = false;
+        for (final Annotation a : annotations) {
+            if (isGeneratedValue(a.annotationType().getName())) {
+                generated = true;
+            } else if (isId(a.annotationType().getName())) {
+                id = true;
+            }
+            final Reader reader = readers.get(a.annotationType());
+            for (final Annotation column : reader.columns(a)) {
+                final Reader columnReader = column == a ? reader : readers.get(column.annotationType());
+                present = true;
+                if (!columnReader.isInsertable(column)) {
+                    insertable = false;
+                }
+                if (!columnReader.isUpdatable(column)) {
+                    updatable = false;
+                }
+            }
+        }
+        return of(present, insertable, updatable, generated, id);
+    }
+
+    /**
+     * @return the attributes, {@link #NONE} if there's no persistence annotation
+     */
+    public static ColumnAttributes of(final boolean present, final boolean insertable, final boolean updatable, final boolean generated, final boolean id) {
+        if (!present && !generated && !id) {
+            return NONE;
+        }
+        return new ColumnAttributes(present, insertable, updatable, generated, id);
+    }
+
+    /**
+     * @param name annotation type name
+     * @return true for the GeneratedValue of javax.persistence or jakarta.persistence
+     */
+    public static boolean isGeneratedValue(final String name) {
+        return "javax.persistence.GeneratedValue".equals(name) || "jakarta.persistence.GeneratedValue".equals(name);
+    }
+
+    /**
+     * @param name annotation type name
+     * @return true for the Id of javax.persistence or jakarta.persistence
+     */
+    public static boolean isId(final String name) {
+        return "javax.persistence.Id".equals(name) || "jakarta.persistence.Id".equals(name);
+    }
+
+    private final boolean present;
+    private final boolean insertable;
+    private final boolean updatable;
+    private final boolean generated;
+    private final boolean id;
+
+    public ColumnAttributes(final boolean present, final boolean insertable, final boolean updatable) {
+        this(present, insertable, updatable, false, false);
+    }
+
+    public ColumnAttributes(final boolean present, final boolean insertable, final boolean updatable, final boolean generated, final boolean id) {
+        this.present = present;
+        this.insertable = insertable;
+        this.updatable = updatable;
+        this.generated = generated;
+        this.id = id;
+    }
+
+    /**
+     * @return true if the field has a column annotation
+     */
+    public boolean isPresent() {
+        return present;
+    }
+
+    public boolean isInsertable() {
+        return insertable;
+    }
+
+    public boolean isUpdatable() {
+        return updatable;
+    }
+
+    /**
+     * @return true if the value is generated by the persistence provider
+     */
+    public boolean isGenerated() {
+        return generated;
+    }
+
+    /**
+     * @return true if the field is the id of the entity
+     */
+    public boolean isId() {
+        return id;
+    }
+
+    @Override
+    public String toString() {
+        return "ColumnAttributes{present=" + present + ", insertable=" + insertable + ", updatable=" + updatable + ", generated=" + generated + ", id=" + id + "}";
+    }
+
+    private static boolean isPersistence(final Class type) {
+        for (final String p : PACKAGES) {
+            if (type.getName().startsWith(p)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Method getMethod(final Class type, final String name) {
+        try {
+            return type.getMethod(name);
+        } catch (NoSuchMethodException | SecurityException ex) {
+        }
+        return null;
+    }
+
+    /**
+     * Attribute accessors of one annotation type.
+     */
+    private static final class Reader {
+        private static final Annotation[] EMPTY = new Annotation[0];
+
+        private final Method insertable;
+        private final Method updatable;
+        private final Method value;
+
+        Reader(final Class type) {
+            Method ins = null;
+            Method upd = null;
+            Method val = null;
+            if (isPersistence(type)) {
+                if (type.getSimpleName().endsWith("Column")) {
+                    ins = getMethod(type, "insertable");
+                    upd = getMethod(type, "updatable");
+                } else if (type.getSimpleName().endsWith("Columns")) {
+                    val = getMethod(type, "value");
+                    if (val != null && !(val.getReturnType().isArray() && val.getReturnType().getComponentType().isAnnotation())) {
+                        val = null;
+                    }
+                }
+            }
+            this.insertable = ins != null && boolean.class.equals(ins.getReturnType()) ? ins : null;
+            this.updatable = upd != null && boolean.class.equals(upd.getReturnType()) ? upd : null;
+            this.value = val;
+        }
+
+        Annotation[] columns(final Annotation a) {
+            if (insertable != null || updatable != null) {
+                return new Annotation[] {a};
+            }
+            if (value != null) {
+                try {
+                    return (Annotation[]) value.invoke(a);
+                } catch (Exception ex) {
+                }
+            }
+            return EMPTY;
+        }
+
+        boolean isInsertable(final Annotation a) {
+            return get(insertable, a);
+        }
+
+        boolean isUpdatable(final Annotation a) {
+            return get(updatable, a);
+        }
+
+        private static boolean get(final Method m, final Annotation a) {
+            if (m != null) {
+                try {
+                    return (Boolean) m.invoke(a);
+                } catch (Exception ex) {
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -15,8 +15,6 @@
  */
 package ru.org.sevn.netbeans.genmodel;
 
-import java.lang.annotation.Annotation;
-import java.lang.reflect.Field;
 import org.openide.awt.ActionID;
 import org.openide.awt.ActionReference;
 import org.openide.awt.ActionReferences;
@@ -39,23 +37,13 @@ import org.openide.util.NbBundle.Messages;
 @Messages("CTL_CreateModelAction=Create Create Model")
 public final class CreateModelAction extends BaseAction {
     
-    public static int useFieldCreate(Field f, final String clsName) {
+    public static int useFieldCreate(FieldDescriptor f, final String clsName) {
         if (!excludedTypes.contains(clsName)) {
-            f.setAccessible(true);
-            Annotation[] annotations = f.getAnnotations();
-            if (annotations != null) {
-                for (Annotation a : annotations) {
-                    //TODO
-                    final String astr = a.toString();
-                    if (astr.contains("@javax.persistence.") && astr.contains("Column")) {
-                        if (astr.contains("insertable=false")) {
-                            return 0;
-                        }
-                        if (astr.contains("updatable=false")) {
-                            return 1;
-                        }
-                    }
-                }
+            if (!f.isInsertable()) {
+                return 0;
+            }
+            if (!f.isUpdatable()) {
+                return 1;
             }
             return -1;
         }
@@ -63,7 +51,7 @@ public final class CreateModelAction extends BaseAction {
     }
     
     @Override
-    protected int useField(Field f, final String clsName, final String editedFileClassName) {
+    protected int useField(FieldDescriptor f, final String clsName, final String editedFileClassName) {
         return useFieldCreate(f, clsName);
     }
     
@@ -15,13 +15,12 @@
  */
 package ru.org.sevn.netbeans.genmodel;
 
-import java.lang.annotation.Annotation;
-import java.lang.reflect.Field;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import org.netbeans.api.project.SourceGroup;
 import org.openide.awt.ActionID;
 import org.openide.awt.ActionReference;
 import org.openide.awt.ActionReferences;
@@ -45,35 +44,33 @@ import static ru.org.sevn.netbeans.genmodel.BaseAction.excludedTypes;
 @Messages("CTL_DaoAction=Create Dao")
 public final class DaoAction extends BaseAction {
 
+    /**
+     * Entities written by the generated createAll and updateAll between flush and clear.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 50;
+
+    private final Boolean presenceMask;
+
+    public DaoAction() {
+        this.presenceMask = null;
+    }
+
+    /**
+     * @param presenceMask layout of the Modify model if it isn't found, see {@link ModifyModelAction#ModifyModelAction(boolean)}
+     */
+    public DaoAction(final boolean presenceMask) {
+        this.presenceMask = presenceMask;
+    }
     
-    public static int useFieldModify(Field f, final String clsName) {
-        if (!excludedTypes.contains(clsName)) {
-            f.setAccessible(true);
-            Annotation[] annotations = f.getAnnotations();
-            if (annotations != null) {
-                for (Annotation a : annotations) {
-                    //TODO
-                    final String astr = a.toString();
-                    if (astr.contains("@javax.persistence.") && astr.contains("Column")) {
-                        if (astr.contains("insertable=false")) {//updatable=false
-                            return 0;
-                        }
-                        if (astr.contains("updatable=false")) {
-                            return 0;
-                        }
-                    }
-                }
-            }
-            return 1;
-        }
-        return 0;
+    public static int useFieldModify(FieldDescriptor f, final String clsName) {
+        return ModifyModelAction.useFieldModify(f, clsName);
     }
     
-    private Map<String, String> fillFields(final Class cls, final Map<String, String> fields) {
+    private Map<String, String> fillFields(final EntityDescriptor cls, final Map<String, String> fields) {
         if (cls != null) {
-            for (Field f : cls.getDeclaredFields()) {
-                if (!"part".equals(f.getName())) {
-                    final String clsName = f.getType().getName().toString();
+            for (FieldDescriptor f : cls.getFields()) {
+                if (!"part".equals(f.getName()) && !ModifyModelAction.ASSIGNED.equals(f.getName())) {
+                    final String clsName = f.getTypeName();
                     fields.put(f.getName(), clsName);
                 }
             }
@@ -81,10 +78,10 @@ public final class DaoAction extends BaseAction {
         return fields;
     }
     
-    private Map<String, Map<String, Object>> fillFieldsCodegen(final Class cls, final Map<String, Map<String, Object>> fields) {
+    private Map<String, CodegenAttributes> fillFieldsCodegen(final EntityDescriptor cls, final Map<String, CodegenAttributes> fields) {
         if (cls != null) {
-            for (Field f : cls.getDeclaredFields()) {
-                Map<String, Object> cg = CodegenUtil.getCodegen(App.instance().getCodeGenClassName(), f);
+            for (FieldDescriptor f : cls.getFields()) {
+                final CodegenAttributes cg = f.getCodegen();
                 if (cg != null && CodegenUtil.isSerchable(cg)) {
                     fields.put(f.getName(), cg);
                 }
@@ -93,7 +90,7 @@ public final class DaoAction extends BaseAction {
         return fields;
     }
     
-    private String getClassName(final String name, final Class nameClass) {
+    private String getClassName(final String name, final EntityDescriptor nameClass) {
         if (nameClass != null) {
             return name;
         }
@@ -101,27 +98,31 @@ public final class DaoAction extends BaseAction {
     }
 
     @Override
-    protected void formatJavaModel(final StringBuilder sb, 
-            final SourceGroup sg, 
+    protected void formatJavaModel(final CodeWriter sb, 
+            final MetadataProvider provider, 
             final String srcClassName, 
             final String editedFileClassNameFull,
             final String editedFileClassName) {
 
+        final EntityDescriptor srcClass = provider.describe(srcClassName);
+        final String persistence = srcClass == null || srcClass.getPersistencePackage() == null ? "javax.persistence" : srcClass.getPersistencePackage();
         final HashSet<String> usedClasses = makeUsedClasses();
         App.instance().fillUsedClassDao(usedClasses);
-        usedClasses.add("javax.persistence.EntityManager");
-        usedClasses.add("javax.persistence.PersistenceContext");
-        usedClasses.add("org.springframework.stereotype.Component");
+        usedClasses.add(persistence + ".EntityManager");
+        usedClasses.add(persistence + ".PersistenceContext");
+        if (!editedFileClassName.startsWith("Abstract")) {
+            usedClasses.add("org.springframework.stereotype.Component");
+        }
 
         usedClasses.add(srcClassName);
         
-        final String packageName = Util.getClassNamePackage(editedFileClassNameFull);
-        final String createModelFillName = packageName + ".Create" + Util.getClassNameShort(srcClassName) + "Model";
-        final String modifyModelFillName = packageName + ".Modify" + Util.getClassNameShort(srcClassName) + "Model";
-        final String queryModelFillName = packageName + ".AbstractQuery" + Util.getClassNameShort(srcClassName) + "Model";
-        final Class createClass = Util.loadClassAny(createModelFillName, sg.getRootFolder());
-        final Class modifyClass = Util.loadClassAny(modifyModelFillName, sg.getRootFolder());
-        final Class queryClass = Util.loadClassAny(queryModelFillName, sg.getRootFolder());
+        final String packageName = ClassNames.getClassNamePackage(editedFileClassNameFull);
+        final String createModelFillName = packageName + ".Create" + ClassNames.getClassNameShort(srcClassName) + "Model";
+        final String modifyModelFillName = packageName + ".Modify" + ClassNames.getClassNameShort(srcClassName) + "Model";
+        final String queryModelFillName = packageName + ".AbstractQuery" + ClassNames.getClassNameShort(srcClassName) + "Model";
+        final EntityDescriptor createClass = provider.describe(createModelFillName);
+        final EntityDescriptor modifyClass = provider.describe(modifyModelFillName);
+        final EntityDescriptor queryClass = provider.describe(queryModelFillName);
         if (createClass == null) {
             sb.append("//GENERATION WARNING: not found " + createModelFillName + "\n");
         }
@@ -135,11 +136,29 @@ public final class DaoAction extends BaseAction {
         final LinkedHashMap<String, String> fieldsCreate = new LinkedHashMap<>();
         final LinkedHashMap<String, String> fieldsModify = new LinkedHashMap<>();
             boolean hasPart = false;
-            Class srcClass = Util.loadClassAny(srcClassName, sg.getRootFolder());
+            boolean generatedId = false;
+            final List<FieldDescriptor> sortKey = new ArrayList<>();
+            FieldDescriptor idField = null;
             if (srcClass != null) {
-                for (Field f : srcClass.getDeclaredFields()) {
+                for (FieldDescriptor f : srcClass.getAllFields()) {
+                    if (f.isId() && f.isGenerated()) {
+                        generatedId = true;
+                    }
+                    if (f.isId() && idField == null) {
+                        idField = f;
+                    }
+                    if (f.getCodegen() != null && ggg(f.getCodegen().getSortKey(), "").length() > 0) {
+                        sortKey.add(f);
+                    }
+                }
+                if (sortKey.size() > 0 && idField != null && !sortKey.contains(idField)) {
+                    sortKey.add(idField);
+                }
+
+                for (FieldDescriptor f : srcClass.getFields()) {
+                    Cancellation.check();
                     if (!isExcluded(f)) {
-                        final String clsName = f.getType().getName().toString();
+                        final String clsName = f.getTypeName();
                         final int useFieldCreate = CreateModelAction.useFieldCreate(f, clsName);
                         final int useFieldModify = ModifyModelAction.useFieldModify(f, clsName);
                         if (useFieldCreate > 0) {
@@ -161,79 +180,379 @@ public final class DaoAction extends BaseAction {
             fillFields(createClass, fieldsCreate);
             fillFields(modifyClass, fieldsModify);
             
-            usedClasses.remove(editedFileClassNameFull);
-            if (editedFileClassName.startsWith("Abstract")) {
-                usedClasses.remove("org.springframework.stereotype.Component");
-            }
-            for (Iterator<String> it = usedClasses.iterator(); it.hasNext();) {
-                String cl = it.next();
-                sb.append("import ").append(cl).append(";").append("\n");
-            }
-            sb.append("\n");
-            
-            String queryClassName = "".concat("Query").concat(Util.getClassNameShort(srcClassName)).concat("Model");
-            Class queryClassNameClass = Util.loadClassAny(packageName + "." + queryClassName, sg.getRootFolder());
+            // the body is written first, the print methods add the imports of the code they print
+            final CodeWriter body = CodeWriter.buffer();
+            String queryClassName = "".concat("Query").concat(ClassNames.getClassNameShort(srcClassName)).concat("Model");
+            EntityDescriptor queryClassNameClass = provider.describe(packageName + "." + queryClassName);
             if (queryClassNameClass == null) {
                 queryClassName = "Basic" + queryClassName;
-                queryClassNameClass = Util.loadClassAny(packageName + "." + queryClassName, sg.getRootFolder());
+                queryClassNameClass = provider.describe(packageName + "." + queryClassName);
             }
             
             if (editedFileClassName.startsWith("Abstract")) {
-                sb.append("public abstract class ");
+                body.append("public abstract class ");
             } else {
-                sb.append("@Component\n");
-                sb.append("public class ");
+                body.append("@Component\n");
+                body.append("public class ");
+            }
+            body.append(editedFileClassName).append(" extends AbstractDao<").append(ClassNames.getClassNameShort(srcClassName)).append(",").append(getClassName(queryClassName, queryClassNameClass)).append("> {").append("\n");
+            body.append("\n");
+            body.append("    private QueryBuilderConfiguration configuration;\n");
+            body.append("\n");
+            body.append("    @Override\n");
+            body.append("    public QueryBuilderConfiguration<").append(ClassNames.getClassNameShort(srcClassName)).append("> getConfiguration() {\n");
+            body.append("        return configuration;\n");
+            body.append("    }\n");
+            body.append("\n");
+            body.append("    @PersistenceContext\n");
+            body.append("    public void setEntityManager (EntityManager entityManager) {\n");
+            body.append("        configuration = new QueryBuilderConfiguration (entityManager, ").append(ClassNames.getClassNameShort(srcClassName)).append(".class);\n");
+            body.append("    }\n");
+            body.append("\n");
+            printBatchSize(body);
+            printCreate(body, srcClassName, hasPart, fieldsCreate);
+            final boolean mask = modifyClass == null ? 
+                    (presenceMask == null ? ModifyModelAction.isPresenceMaskPreferred() : presenceMask) : 
+                    ModifyModelAction.isPresenceMask(modifyClass);
+            printUpdate(body, srcClassName, fieldsModify, mask);
+            printCreateAll(body, usedClasses, srcClassName, hasPart, fieldsCreate, generatedId);
+            printUpdateAll(body, usedClasses, srcClassName);
+            final Map<String, CodegenAttributes> codegenFields = fillFieldsCodegen(queryClassNameClass, new LinkedHashMap<String, CodegenAttributes>());
+            final boolean hasJoins = hasJoins(codegenFields);
+            if (hasJoins) {
+                body.append("//GENERATION WARNING: updateWhere is not generated, the query model has joins\n");
+            } else {
+                printUpdateWhere(body, usedClasses, persistence, srcClassName, fieldsModify, mask, getClassName(queryClassName, queryClassNameClass));
+            }
+            if (sortKey.size() > 0) {
+                if (hasJoins) {
+                    body.append("//GENERATION WARNING: findPage is not generated, the query model has joins\n");
+                } else {
+                    printKeyset(body, usedClasses, persistence, srcClassName, sortKey, getClassName(queryClassName, queryClassNameClass));
+                }
+            }
+            if (hasJoins) {
+                body.append("//GENERATION WARNING: stream is not generated, the query model has joins\n");
+            } else {
+                printStream(body, usedClasses, persistence, srcClassName, getClassName(queryClassName, queryClassNameClass));
+            }
+            printWhere(body, srcClassName, queryClassName, queryClassNameClass, queryClass, codegenFields);
+            printJoins(body, queryClassName, queryClassNameClass, codegenFields);
+            body.append("\n");
+            body.append("}\n");
+
+            usedClasses.remove(editedFileClassNameFull);
+            for (Iterator<String> it = usedClasses.iterator(); it.hasNext();) {
+                String cl = it.next();
+                sb.append("import ").append(cl).append(";").append("\n");
             }
-            sb.append(editedFileClassName).append(" extends AbstractDao<").append(Util.getClassNameShort(srcClassName)).append(",").append(getClassName(queryClassName, queryClassNameClass)).append("> {").append("\n");
-            sb.append("\n");
-            sb.append("    private QueryBuilderConfiguration configuration;\n");
-            sb.append("\n");
-            sb.append("    @Override\n");
-            sb.append("    public QueryBuilderConfiguration<").append(Util.getClassNameShort(srcClassName)).append("> getConfiguration() {\n");
-            sb.append("        return configuration;\n");
-            sb.append("    }\n");
-            sb.append("\n");
-            sb.append("    @PersistenceContext\n");
-            sb.append("    public void setEntityManager (EntityManager entityManager) {\n");
-            sb.append("        configuration = new QueryBuilderConfiguration (entityManager, ").append(Util.getClassNameShort(srcClassName)).append(".class);\n");
-            sb.append("    }\n");
-            sb.append("\n");
-            printCreate(sb, srcClassName, hasPart, fieldsCreate);
-            printUpdate(sb, srcClassName, fieldsModify);
-            printWhere(sb, srcClassName, queryClassName, queryClassNameClass, queryClass, fieldsCreate, fieldsModify);
-            printJoins(sb, queryClassName, queryClassNameClass);
             sb.append("\n");
-            sb.append("}\n");
+            sb.append(body.toString());
     }
     
-    private void printCreate(final StringBuilder sb, final String srcClassName, final boolean hasPart, final LinkedHashMap<String, String> fieldsCreate) {
+    private void printCreate(final CodeWriter sb, final String srcClassName, final boolean hasPart, final LinkedHashMap<String, String> fieldsCreate) {
         if (fieldsCreate.size() == 0) {
-            sb.append("    public ").append(Util.getClassNameShort(srcClassName)).append(" create (final Modify").append(Util.getClassNameShort(srcClassName)).append("Model model) {\n");
-            sb.append("        final ").append(Util.getClassNameShort(srcClassName)).append(" entity = update (new ").append(Util.getClassNameShort(srcClassName)).append(" (), model);\n");
+            sb.append("    public ").append(ClassNames.getClassNameShort(srcClassName)).append(" create (final Modify").append(ClassNames.getClassNameShort(srcClassName)).append("Model model) {\n");
+        } else {
+            sb.append("    public ").append(ClassNames.getClassNameShort(srcClassName)).append(" create (final Create").append(ClassNames.getClassNameShort(srcClassName)).append("Model model) {\n");
+        }
+        printNewEntity(sb, "        ", srcClassName, hasPart, fieldsCreate);
+        sb.append("        return getConfiguration().getEntityManager().merge (entity);\n");
+        sb.append("    }\n");
+    }
+    
+    /**
+     * Prints the statements making the entity from the model, followed by an empty line.
+     */
+    private void printNewEntity(final CodeWriter sb, final String padding, final String srcClassName, final boolean hasPart, final LinkedHashMap<String, String> fieldsCreate) {
+        if (fieldsCreate.size() == 0) {
+            sb.append(padding).append("final ").append(ClassNames.getClassNameShort(srcClassName)).append(" entity = update (new ").append(ClassNames.getClassNameShort(srcClassName)).append(" (), model);\n");
             sb.append("\n");
-            sb.append("        return getConfiguration().getEntityManager().merge (entity);\n");
-            sb.append("    }\n");
         } else {
-            sb.append("    public ").append(Util.getClassNameShort(srcClassName)).append(" create (final Create").append(Util.getClassNameShort(srcClassName)).append("Model model) {\n");
             if (hasPart) {
-                sb.append("        final ").append(Util.getClassNameShort(srcClassName)).append(" entity = update (new ").append(Util.getClassNameShort(srcClassName)).append(" (), model.getPart ());\n");
+                sb.append(padding).append("final ").append(ClassNames.getClassNameShort(srcClassName)).append(" entity = update (new ").append(ClassNames.getClassNameShort(srcClassName)).append(" (), model.getPart ());\n");
             } else {
-                sb.append("        final ").append(Util.getClassNameShort(srcClassName)).append(" entity = new ").append(Util.getClassNameShort(srcClassName)).append(" ();\n");
+                sb.append(padding).append("final ").append(ClassNames.getClassNameShort(srcClassName)).append(" entity = new ").append(ClassNames.getClassNameShort(srcClassName)).append(" ();\n");
             }
             sb.append("\n");
             for (String k : fieldsCreate.keySet()) {
-                sb.append("        entity.set").append(Util.toCamelCase(k)).append(" (model.get").append(Util.toCamelCase(k)).append("());").append("\n");
+                sb.append(padding).append("entity.set").append(ClassNames.toCamelCase(k)).append(" (model.get").append(ClassNames.toCamelCase(k)).append("());").append("\n");
             }
             sb.append("\n");
-            sb.append("        return getConfiguration().getEntityManager().merge (entity);\n");
-            sb.append("    }\n");
         }
     }
     
-    private void printUpdate(final StringBuilder sb, final String srcClassName, final LinkedHashMap<String, String> fieldsModify) {
-            sb.append("    public ").append(Util.getClassNameShort(srcClassName)).append(" update (final ").append(Util.getClassNameShort(srcClassName)).append(" entity, final Modify").append(Util.getClassNameShort(srcClassName)).append("Model model) {\n");
+    private void printBatchSize(final CodeWriter sb) {
+        sb.append("    private int batchSize = ").append(DEFAULT_BATCH_SIZE).append(";\n");
+        sb.append("\n");
+        sb.append("    /**\n");
+        sb.append("     * @param batchSize entities written by createAll and updateAll between flush and clear, as the JDBC batch size of the persistence provider, at least 1\n");
+        sb.append("     */\n");
+        sb.append("    public void setBatchSize (final int batchSize) {\n");
+        sb.append("        if (batchSize < 1) {\n");
+        sb.append("            throw new IllegalArgumentException (\"batchSize must be at least 1: \" + batchSize);\n");
+        sb.append("        }\n");
+        sb.append("        this.batchSize = batchSize;\n");
+        sb.append("    }\n");
+        sb.append("\n");
+    }
+    
+    private void printFlushWindow(final CodeWriter sb, final String padding) {
+        sb.append(padding).append("if (++count % batchSize == 0) {\n");
+        sb.append(padding).append("    em.flush ();\n");
+        sb.append(padding).append("    em.clear ();\n");
+        sb.append(padding).append("}\n");
+    }
+    
+    /**
+     * @param persist true if the entity id is generated, a new entity can't be in the database and is persisted instead of merged
+     */
+    private void printCreateAll(final CodeWriter sb, final HashSet<String> usedClasses, final String srcClassName, final boolean hasPart, final LinkedHashMap<String, String> fieldsCreate, final boolean persist) {
+        final String entityName = ClassNames.getClassNameShort(srcClassName);
+        final String modelName = (fieldsCreate.size() == 0 ? "Modify" : "Create") + entityName + "Model";
+        usedClasses.add("java.util.ArrayList");
+        usedClasses.add("java.util.Collection");
+        usedClasses.add("java.util.List");
+        sb.append("\n");
+        sb.append("    /**\n");
+        sb.append("     * Creates the entities flushing and clearing the persistence context every batchSize entities,\n");
+        sb.append("     * the returned entities and the entities loaded before are detached.\n");
+        sb.append("     */\n");
+        sb.append("    public List<").append(entityName).append("> createAll (final Collection<").append(modelName).append("> models) {\n");
+        sb.append("        final EntityManager em = getConfiguration().getEntityManager();\n");
+        sb.append("        final List<").append(entityName).append("> ret = new ArrayList<> (models.size ());\n");
+        sb.append("        int count = 0;\n");
+        sb.append("        for (final ").append(modelName).append(" model : models) {\n");
+        printNewEntity(sb, "            ", srcClassName, hasPart, fieldsCreate);
+        if (persist) {
+            sb.append("            em.persist (entity);\n");
+            sb.append("            ret.add (entity);\n");
+        } else {
+            sb.append("            ret.add (em.merge (entity));\n");
+        }
+        printFlushWindow(sb, "            ");
+        sb.append("        }\n");
+        sb.append("        em.flush ();\n");
+        sb.append("        em.clear ();\n");
+        sb.append("        return ret;\n");
+        sb.append("    }\n");
+    }
+    
+    private void printUpdateAll(final CodeWriter sb, final HashSet<String> usedClasses, final String srcClassName) {
+        final String entityName = ClassNames.getClassNameShort(srcClassName);
+        final String modelName = "Modify" + entityName + "Model";
+        usedClasses.add("java.util.Map");
+        sb.append("\n");
+        sb.append("    /**\n");
+        sb.append("     * Updates the entities by id flushing and clearing the persistence context every batchSize entities,\n");
+        sb.append("     * the entities loaded before are detached.\n");
+        sb.append("     * @return number of the entities found and updated\n");
+        sb.append("     */\n");
+        sb.append("    public int updateAll (final Map<?, ").append(modelName).append("> models) {\n");
+        sb.append("        final EntityManager em = getConfiguration().getEntityManager();\n");
+        sb.append("        int count = 0;\n");
+        sb.append("        for (final Map.Entry<?, ").append(modelName).append("> e : models.entrySet()) {\n");
+        sb.append("            final ").append(entityName).append(" entity = em.find (").append(entityName).append(".class, e.getKey());\n");
+        sb.append("            if (entity != null) {\n");
+        sb.append("                update (entity, e.getValue());\n");
+        printFlushWindow(sb, "                ");
+        sb.append("            }\n");
+        sb.append("        }\n");
+        sb.append("        em.flush ();\n");
+        sb.append("        em.clear ();\n");
+        sb.append("        return count;\n");
+        sb.append("    }\n");
+    }
+    
+    /**
+     * Prints the bulk update of the set Modify fields with the where clause of buildWhereQuery,
+     * the clause and its parameters are taken from WhereHelper by getWhere() and getParameters().
+     * An update statement can't declare the aliases of buildJoins, so it isn't printed for a query model with joins.
+     * @param persistence javax.persistence or jakarta.persistence of the entity
+     */
+    private void printUpdateWhere(final CodeWriter sb, final HashSet<String> usedClasses, final String persistence, final String srcClassName, final LinkedHashMap<String, String> fieldsModify, final boolean mask, final String queryModelName) {
+        final String entityName = ClassNames.getClassNameShort(srcClassName);
+        usedClasses.add("java.util.LinkedHashMap");
+        usedClasses.add("java.util.Map");
+        usedClasses.add(persistence + ".Query");
+        sb.append("\n");
+        sb.append("    /**\n");
+        sb.append("     * Sets the fields set in the modify model on all the entities matching the query model with one update statement.\n");
+        sb.append("     * The entities are not loaded, the managed ones are not refreshed.\n");
+        sb.append("     * @return number of the updated entities, 0 if no field is set\n");
+        sb.append("     */\n");
+        sb.append("    public int updateWhere (final Modify").append(entityName).append("Model modify, final ").append(queryModelName).append(" query) {\n");
+        sb.append("        final Map<String, Object> values = new LinkedHashMap<> ();\n");
+        for (String k : fieldsModify.keySet()) {
+            if (mask) {
+                sb.append("        if (modify.has").append(ClassNames.toCamelCase(k)).append("()) {\n");
+                sb.append("            values.put (\"").append(k).append("\", modify.get").append(ClassNames.toCamelCase(k)).append("());\n");
+            } else {
+                sb.append("        if (modify.get").append(ClassNames.toCamelCase(k)).append("() != null) {\n");
+                sb.append("            values.put (\"").append(k).append("\", modify.get").append(ClassNames.toCamelCase(k)).append("().orElse (null));\n");
+            }
+            sb.append("        }\n");
+        }
+        sb.append("        if (values.isEmpty ()) {\n");
+        sb.append("            return 0;\n");
+        sb.append("        }\n");
+        sb.append("        final StringBuilder jpql = new StringBuilder (\"update ").append(entityName).append(" entity set \");\n");
+        sb.append("        String sep = \"\";\n");
+        sb.append("        for (final String k : values.keySet ()) {\n");
+        sb.append("            jpql.append (sep).append (\"entity.\").append (k).append (\" = :set_\").append (k);\n");
+        sb.append("            sep = \", \";\n");
+        sb.append("        }\n");
+        sb.append("        final WhereHelper wh = new WhereHelper ();\n");
+        sb.append("        buildWhereQuery (wh, query);\n");
+        sb.append("        final String where = wh.getWhere ().trim ();\n");
+        sb.append("        if (where.length () > 0) {\n");
+        sb.append("            jpql.append (\" where \").append (where);\n");
+        sb.append("        }\n");
+        sb.append("        final Query q = getConfiguration().getEntityManager().createQuery (jpql.toString ());\n");
+        sb.append("        for (final Map.Entry<String, Object> e : values.entrySet ()) {\n");
+        sb.append("            q.setParameter (\"set_\" + e.getKey (), e.getValue ());\n");
+        sb.append("        }\n");
+        sb.append("        for (final Map.Entry<String, Object> e : wh.getParameters ().entrySet ()) {\n");
+        sb.append("            q.setParameter (e.getKey (), e.getValue ());\n");
+        sb.append("        }\n");
+        sb.append("        return q.executeUpdate ();\n");
+        sb.append("    }\n");
+    }
+    
+    private static boolean isDescending(final FieldDescriptor f) {
+        return f.getCodegen() != null && "desc".equalsIgnoreCase(ggg(f.getCodegen().getSortKey(), ""));
+    }
+    
+    /**
+     * Prints the keyset pagination by the sort key fields: the order, the predicate of the entities after the last one
+     * (k1 &gt; :a1 or k1 = :a1 and k2 &gt; :a2 ...) and the page query.
+     */
+    private void printKeyset(final CodeWriter sb, final HashSet<String> usedClasses, final String persistence, final String srcClassName, final List<FieldDescriptor> sortKey, final String queryModelName) {
+        final String entityName = ClassNames.getClassNameShort(srcClassName);
+        usedClasses.add("java.util.LinkedHashMap");
+        usedClasses.add("java.util.List");
+        usedClasses.add("java.util.Map");
+        usedClasses.add(persistence + ".TypedQuery");
+        final StringBuilder order = new StringBuilder();
+        final StringBuilder after = new StringBuilder();
+        for (int i = 0; i < sortKey.size(); i++) {
+            final FieldDescriptor f = sortKey.get(i);
+            if (i > 0) {
+                order.append(", ");
+                after.append(" or ");
+            }
+            order.append("entity.").append(f.getName()).append(isDescending(f) ? " desc" : " asc");
+            for (int j = 0; j < i; j++) {
+                final FieldDescriptor e = sortKey.get(j);
+                after.append("entity.").append(e.getName()).append(" = :after").append(ClassNames.toCamelCase(e.getName())).append(" and ");
+            }
+            after.append("entity.").append(f.getName()).append(isDescending(f) ? " < " : " > ").append(":after").append(ClassNames.toCamelCase(f.getName()));
+        }
+        sb.append("\n");
+        sb.append("    /**\n");
+        sb.append("     * Order of the keyset pages, the sort key fields and the id, see findPage.\n");
+        sb.append("     */\n");
+        sb.append("    public static final String KEYSET_ORDER = \"").append(order).append("\";\n");
+        sb.append("\n");
+        sb.append("    /**\n");
+        sb.append("     * Predicate of the entities after the last one in KEYSET_ORDER, the sort key fields must not be null.\n");
+        sb.append("     */\n");
+        sb.append("    public String after (final ").append(entityName).append(" last, final Map<String, Object> parameters) {\n");
+        for (final FieldDescriptor f : sortKey) {
+            sb.append("        parameters.put (\"after").append(ClassNames.toCamelCase(f.getName())).append("\", last.get").append(ClassNames.toCamelCase(f.getName())).append("());\n");
+        }
+        sb.append("        return \"(").append(after).append(")\";\n");
+        sb.append("    }\n");
+        sb.append("\n");
+        sb.append("    /**\n");
+        sb.append("     * Page of the entities matching the query model in KEYSET_ORDER after the last entity of the previous page,\n");
+        sb.append("     * the first page for null. The rows before the page are not read as with an offset, so a deep page costs the same as the first one\n");
+        sb.append("     * with an index on the key.\n");
+        sb.append("     */\n");
+        sb.append("    public List<").append(entityName).append("> findPage (final ").append(queryModelName).append(" query, final ").append(entityName).append(" last, final int limit) {\n");
+        sb.append("        final WhereHelper wh = new WhereHelper ();\n");
+        sb.append("        buildWhereQuery (wh, query);\n");
+        sb.append("        final Map<String, Object> parameters = new LinkedHashMap<> (wh.getParameters ());\n");
+        sb.append("        String where = wh.getWhere ().trim ();\n");
+        sb.append("        if (last != null) {\n");
+        sb.append("            final String after = after (last, parameters);\n");
+        sb.append("            where = where.length () > 0 ? \"(\" + where + \") and \" + after : after;\n");
+        sb.append("        }\n");
+        sb.append("        final StringBuilder jpql = new StringBuilder (\"select entity from ").append(entityName).append(" entity\");\n");
+        sb.append("        if (where.length () > 0) {\n");
+        sb.append("            jpql.append (\" where \").append (where);\n");
+        sb.append("        }\n");
+        sb.append("        jpql.append (\" order by \").append (KEYSET_ORDER);\n");
+        sb.append("        final TypedQuery<").append(entityName).append("> q = getConfiguration().getEntityManager().createQuery (jpql.toString (), ").append(entityName).append(".class);\n");
+        sb.append("        for (final Map.Entry<String, Object> e : parameters.entrySet ()) {\n");
+        sb.append("            q.setParameter (e.getKey (), e.getValue ());\n");
+        sb.append("        }\n");
+        sb.append("        return q.setMaxResults (limit).getResultList ();\n");
+        sb.append("    }\n");
+    }
+    
+    /**
+     * Prints the stream of the entities matching the query model, read with the JDBC fetch size hints of Hibernate and EclipseLink
+     * and detached a fetch size at a time. EclipseLink reads the whole result list for getResultStream unless the query has a cursor.
+     */
+    private void printStream(final CodeWriter sb, final HashSet<String> usedClasses, final String persistence, final String srcClassName, final String queryModelName) {
+        final String entityName = ClassNames.getClassNameShort(srcClassName);
+        usedClasses.add("java.util.ArrayList");
+        usedClasses.add("java.util.List");
+        usedClasses.add("java.util.Map");
+        usedClasses.add("java.util.stream.Stream");
+        usedClasses.add(persistence + ".TypedQuery");
+        sb.append("\n");
+        sb.append("    /**\n");
+        sb.append("     * Entities matching the query model read fetchSize rows at a time, the entities of the previous fetch are detached\n");
+        sb.append("     * so the memory doesn't grow with the table. The stream holds a database cursor and must be closed.\n");
+        sb.append("     * @param fetchSize at least 1\n");
+        sb.append("     */\n");
+        sb.append("    public Stream<").append(entityName).append("> stream (final ").append(queryModelName).append(" query, final int fetchSize) {\n");
+        sb.append("        if (fetchSize < 1) {\n");
+        sb.append("            throw new IllegalArgumentException (\"fetchSize must be at least 1: \" + fetchSize);\n");
+        sb.append("        }\n");
+        sb.append("        final EntityManager em = getConfiguration().getEntityManager();\n");
+        sb.append("        final WhereHelper wh = new WhereHelper ();\n");
+        sb.append("        buildWhereQuery (wh, query);\n");
+        sb.append("        final StringBuilder jpql = new StringBuilder (\"select entity from ").append(entityName).append(" entity\");\n");
+        sb.append("        final String where = wh.getWhere ().trim ();\n");
+        sb.append("        if (where.length () > 0) {\n");
+        sb.append("            jpql.append (\" where \").append (where);\n");
+        sb.append("        }\n");
+        sb.append("        final TypedQuery<").append(entityName).append("> q = em.createQuery (jpql.toString (), ").append(entityName).append(".class);\n");
+        sb.append("        for (final Map.Entry<String, Object> e : wh.getParameters ().entrySet ()) {\n");
+        sb.append("            q.setParameter (e.getKey (), e.getValue ());\n");
+        sb.append("        }\n");
+        sb.append("        q.setHint (\"org.hibernate.fetchSize\", fetchSize);\n");
+        sb.append("        q.setHint (\"eclipselink.jdbc.fetch-size\", fetchSize);\n");
+        sb.append("        q.setHint (\"eclipselink.cursor\", true);\n");
+        sb.append("        final List<").append(entityName).append("> fetched = new ArrayList<> (fetchSize);\n");
+        sb.append("        return q.getResultStream ().peek (entity -> {\n");
+        sb.append("            if (fetched.size () == fetchSize) {\n");
+        sb.append("                for (final ").append(entityName).append(" e : fetched) {\n");
+        sb.append("                    em.detach (e);\n");
+        sb.append("                }\n");
+        sb.append("                fetched.clear ();\n");
+        sb.append("            }\n");
+        sb.append("            fetched.add (entity);\n");
+        sb.append("        });\n");
+        sb.append("    }\n");
+    }
+    
+    /**
+     * @param mask true if the Modify model has the presence mask, the set fields are copied without Optional and method references
+     */
+    private void printUpdate(final CodeWriter sb, final String srcClassName, final LinkedHashMap<String, String> fieldsModify, final boolean mask) {
+            sb.append("    public ").append(ClassNames.getClassNameShort(srcClassName)).append(" update (final ").append(ClassNames.getClassNameShort(srcClassName)).append(" entity, final Modify").append(ClassNames.getClassNameShort(srcClassName)).append("Model model) {\n");
             for (String k : fieldsModify.keySet()) {
-                sb.append("        use (model.get").append(Util.toCamelCase(k)).append("(), entity::set").append(Util.toCamelCase(k)).append(");\n");
+                if (mask) {
+                    sb.append("        if (model.has").append(ClassNames.toCamelCase(k)).append("()) {\n");
+                    sb.append("            entity.set").append(ClassNames.toCamelCase(k)).append(" (model.get").append(ClassNames.toCamelCase(k)).append("());\n");
+                    sb.append("        }\n");
+                } else {
+                    sb.append("        use (model.get").append(ClassNames.toCamelCase(k)).append("(), entity::set").append(ClassNames.toCamelCase(k)).append(");\n");
+                }
             }
             sb.append("\n");
             sb.append("        return entity;\n");
@@ -245,28 +564,27 @@ public final class DaoAction extends BaseAction {
     String joinAlias() default "";
     String joinOnExpression() default "";
     */
-    private void printJoins(final StringBuilder sb, final String queryClassName, final Class queryClassNameClass) {
+    private void printJoins(final CodeWriter sb, final String queryClassName, final EntityDescriptor queryClassNameClass, final Map<String, CodegenAttributes> fields) {
             sb.append("\n");
             sb.append("    @Override\n");
             sb.append("    public void buildJoins(final Joins joins, final ").append(getClassName(queryClassName, queryClassNameClass)).append(" model) {\n");
             sb.append("        // @formatter:off\n");
             if (queryClassNameClass != null) {
-                final Map<String, Map<String, Object>> fields = fillFieldsCodegen(queryClassNameClass, new LinkedHashMap());
                 if (fields.size() > 0) {
                     for (String k : fields.keySet()) {
-                        final Map<String, Object> cg = fields.get(k);
-                        final String joinType = ggg(cg.get("joinType"), "");
+                        final CodegenAttributes cg = fields.get(k);
+                        final String joinType = ggg(cg.getJoinType(), "");
                         if (joinType.length() > 0) {
-                            final String getterPrefix = ggg(cg.get("getterPrefix"), "get");
-                            final String joinEntityOrField = ggg(cg.get("joinEntityOrField"), "");
-                            final String joinAlias = ggg(cg.get("joinAlias"), "");
-                            final String joinOnExpression = ggg(cg.get("joinOnExpression"), "");
+                            final String getterPrefix = ggg(cg.getGetterPrefix(), "get");
+                            final String joinEntityOrField = ggg(cg.getJoinEntityOrField(), "");
+                            final String joinAlias = ggg(cg.getJoinAlias(), "");
+                            final String joinOnExpression = ggg(cg.getJoinOnExpression(), "");
                             if (getterPrefix.equals("is")) {
-                                sb.append("        joins.addIf(model.").append(getterPrefix).append(Util.toCamelCase(k)).append(" (), //test\n");
-                                //sb.append("        if ( model.").append(getterPrefix).append(Util.toCamelCase(k)).append(" () ) {\n");
+                                sb.append("        joins.addIf(model.").append(getterPrefix).append(ClassNames.toCamelCase(k)).append(" (), //test\n");
+                                //sb.append("        if ( model.").append(getterPrefix).append(ClassNames.toCamelCase(k)).append(" () ) {\n");
                             } else {
-                                sb.append("        joins.add(model.").append(getterPrefix).append(Util.toCamelCase(k)).append(" (), //test\n");
-                                //sb.append("        if ( model.").append(getterPrefix).append(Util.toCamelCase(k)).append(" () != null ) {\n");
+                                sb.append("        joins.add(model.").append(getterPrefix).append(ClassNames.toCamelCase(k)).append(" (), //test\n");
+                                //sb.append("        if ( model.").append(getterPrefix).append(ClassNames.toCamelCase(k)).append(" () != null ) {\n");
                             }
                             if (joinOnExpression.length() == 0) {
                                 sb.append("                    () -> new JoinField (").append(joinType).append(", \"").append(joinEntityOrField).append("\", \"").append(joinAlias).append("\"), //create").append("\n");
@@ -287,7 +605,7 @@ public final class DaoAction extends BaseAction {
             sb.append("        // @formatter:on\n");
             sb.append("    }\n");
     }
-    private void printWhere(final StringBuilder sb, final String srcClassName, final String queryClassName, final Class queryClassNameClass, final Class queryClass, final LinkedHashMap<String, String> fieldsCreate, final LinkedHashMap<String, String> fieldsModify) {
+    private void printWhere(final CodeWriter sb, final String srcClassName, final String queryClassName, final EntityDescriptor queryClassNameClass, final EntityDescriptor queryClass, final Map<String, CodegenAttributes> codegenFields) {
             if (queryClassNameClass == null) {
                 sb.append("//GENERATION WARNING: not found class: ").append(queryClassName).append("\n");
                 
@@ -297,13 +615,13 @@ public final class DaoAction extends BaseAction {
             sb.append("    public void buildWhereQuery(final WhereHelper wh, final ").append(getClassName(queryClassName, queryClassNameClass)).append(" model) {\n");
             sb.append("        // @formatter:off\n");
             if (queryClass == null) {
-                sb.append("//GENERATION WARNING: not found class: AbstractQuery").append(Util.getClassNameShort(srcClassName)).append("Model\n");
+                sb.append("//GENERATION WARNING: not found class: AbstractQuery").append(ClassNames.getClassNameShort(srcClassName)).append("Model\n");
 //                sb.append("        wh\n");
 //                for (String k : fieldsCreate.keySet()) {
-//                    sb.append("                .andEq(model.get").append(Util.toCamelCase(k)).append("(),   \"entity.").append(k).append("\",    \"entity").append(Util.toCamelCase(k)).append("\")\n");
+//                    sb.append("                .andEq(model.get").append(ClassNames.toCamelCase(k)).append("(),   \"entity.").append(k).append("\",    \"entity").append(ClassNames.toCamelCase(k)).append("\")\n");
 //                }
 //                for (String k : fieldsModify.keySet()) {
-//                    sb.append("                .andEq(model.get").append(Util.toCamelCase(k)).append("(),   \"entity.").append(k).append("\",    \"entity").append(Util.toCamelCase(k)).append("\")\n");
+//                    sb.append("                .andEq(model.get").append(ClassNames.toCamelCase(k)).append("(),   \"entity.").append(k).append("\",    \"entity").append(ClassNames.toCamelCase(k)).append("\")\n");
 //                }
 //                sb.append("                ;\n");
             } else {
@@ -311,7 +629,7 @@ public final class DaoAction extends BaseAction {
                 if (fields.size() > 0) {
                     sb.append("        wh\n");
                     for (String k : fields.keySet()) {
-                        sb.append("                .andEq(model.get").append(Util.toCamelCase(k)).append("(),   \"entity.").append(k).append("\",    \"entity").append(Util.toCamelCase(k)).append("\")\n");
+                        sb.append("                .andEq(model.get").append(ClassNames.toCamelCase(k)).append("(),   \"entity.").append(k).append("\",    \"entity").append(ClassNames.toCamelCase(k)).append("\")\n");
                     }
                     sb.append("                ;\n");
                 }
@@ -323,28 +641,28 @@ public final class DaoAction extends BaseAction {
     String queryExpression () default "";    
     */
             if (queryClassNameClass != null) {
-                final Map<String, Map<String, Object>> fields = fillFieldsCodegen(queryClassNameClass, new LinkedHashMap());
+                final Map<String, CodegenAttributes> fields = codegenFields;
                 if (fields.size() > 0) {
                     sb.append("        wh\n");
                     for (String k : fields.keySet()) {
-                        final Map<String, Object> cg = fields.get(k);
-                        final String joinType = ggg(cg.get("joinType"), "");
+                        final CodegenAttributes cg = fields.get(k);
+                        final String joinType = ggg(cg.getJoinType(), "");
                         if (joinType.length() > 0) continue;
                         
-                        final String entityFieldName = ggg(cg.get("searchFieldName"), "entity." + k);
-                        final String paramName = "entity" + Util.toCamelCase(k);
-                        final String operation = ggg(cg.get("operation"), "andEq");
-                        final String expression = ggg(cg.get("queryExpression"), "");
-                        final String getterPrefix = ggg(cg.get("getterPrefix"), "get");
+                        final String entityFieldName = ggg(cg.getSearchFieldName(), "entity." + k);
+                        final String paramName = "entity" + ClassNames.toCamelCase(k);
+                        final String operation = ggg(cg.getOperation(), "andEq");
+                        final String expression = ggg(cg.getQueryExpression(), "");
+                        final String getterPrefix = ggg(cg.getGetterPrefix(), "get");
                         
                         if (expression == null || expression.length() == 0) {
                             if (paramName == null || paramName.length() == 0) {
-                                sb.append("                .").append(operation).append("(model.").append(getterPrefix).append(Util.toCamelCase(k)).append("(),   \"").append(entityFieldName).append("\")\n");
+                                sb.append("                .").append(operation).append("(model.").append(getterPrefix).append(ClassNames.toCamelCase(k)).append("(),   \"").append(entityFieldName).append("\")\n");
                             } else {
-                                sb.append("                .").append(operation).append("(model.").append(getterPrefix).append(Util.toCamelCase(k)).append("(),   \"").append(entityFieldName).append("\",    \"").append(paramName).append("\")\n");
+                                sb.append("                .").append(operation).append("(model.").append(getterPrefix).append(ClassNames.toCamelCase(k)).append("(),   \"").append(entityFieldName).append("\",    \"").append(paramName).append("\")\n");
                             }
                         } else {
-                            sb.append("                .").append(operation).append("(model.").append(getterPrefix).append(Util.toCamelCase(k)).append("(),   \" ").append(expression).append(" \")\n");
+                            sb.append("                .").append(operation).append("(model.").append(getterPrefix).append(ClassNames.toCamelCase(k)).append("(),   \" ").append(expression).append(" \")\n");
                         }
                     }
                     sb.append("                ;\n");
@@ -354,6 +672,18 @@ public final class DaoAction extends BaseAction {
             sb.append("    }\n");
     }
     
+    /**
+     * @return true if a field of the query model is joined, the where clause may use the aliases of buildJoins then
+     */
+    private static boolean hasJoins(final Map<String, CodegenAttributes> codegenFields) {
+        for (final CodegenAttributes cg : codegenFields.values()) {
+            if (ggg(cg.getJoinType(), "").length() > 0 || ggg(cg.getJoinAlias(), "").length() > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private static String ggg(final Object v, final String defval) {
         if (v == null) {
             return defval;
@@ -366,7 +696,7 @@ public final class DaoAction extends BaseAction {
     }
 
     @Override
-    protected int useField(Field f, String clsName, final String editedFileClassName) {
+    protected int useField(FieldDescriptor f, String clsName, final String editedFileClassName) {
         throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
     }
     
@@ -0,0 +1,601 @@
+/*
+ * Copyright 2018 Veronica Anokhina.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.org.sevn.netbeans.genmodel;
+
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a {@link ClassGraph} as a diagram in one format: PlantUML, Mermaid, Graphviz DOT or a JSON graph.
+ * The graph is built once and can be written in all the formats.
+ * <pre>
+ * for (final DiagramEmitter e : DiagramEmitter.forNames("plantuml,dot")) {
+ *     writer.submit(name + e.getExtension(), e.of(classes));
+ * }
+ * </pre>
+ */
+public abstract class DiagramEmitter {
+
+    public static final String PLANTUML = "plantuml";
+    public static final String MERMAID = "mermaid";
+    public static final String DOT = "dot";
+    public static final String JSON = "json";
+    public static final List<String> ALL = Arrays.asList(PLANTUML, MERMAID, DOT, JSON);
+
+    private final String name;
+    private final String extension;
+
+    protected DiagramEmitter(final String name, final String extension) {
+        this.name = name;
+        this.extension = extension;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return file extension with the dot
+     */
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * @param parts part of every class, null to write all the classes
+     * @param part classes of this part and the relations between them are written, superclasses of other parts too
+     */
+    public abstract void emit(final CodeWriter out, final ClassGraph classes, final int[] parts, final int part);
+
+    /**
+     * Diagram of the parts with links to their files and the number of relations between them.
+     * @param files file of every part
+     */
+    protected abstract void emitIndex(final CodeWriter out, final List<Part> parts, final Map<Long, Integer> links, final String[] files);
+
+    /**
+     * Group of classes on the index diagram.
+     */
+    protected static class Part {
+        private final String label;
+        private int size;
+
+        Part(final String label) {
+            this.label = label;
+        }
+
+        /**
+         * @return package of the first class of the part
+         */
+        public String getLabel() {
+            return label;
+        }
+
+        /**
+         * @return number of classes
+         */
+        public int getSize() {
+            return size;
+        }
+    }
+
+    public CodeWriter.Emitter of(final ClassGraph classes) {
+        return of(classes, null, -1);
+    }
+
+    public CodeWriter.Emitter of(final ClassGraph classes, final int[] parts, final int part) {
+        return new CodeWriter.Emitter() {
+            @Override
+            public void emit(final CodeWriter out) {
+                DiagramEmitter.this.emit(out, classes, parts, part);
+            }
+        };
+    }
+
+    /**
+     * @param parts part of every class, see {@link ClassGraph#partition(int)}
+     * @param files file of every part
+     */
+    public CodeWriter.Emitter ofIndex(final ClassGraph classes, final int[] parts, final String[] files) {
+        return new CodeWriter.Emitter() {
+            @Override
+            public void emit(final CodeWriter out) {
+                final int count = files.length;
+                final List<Part> lst = new ArrayList<>();
+                for (int p = 0; p < count; p++) {
+                    lst.add(null);
+                }
+                for (int id = 0; id < parts.length; id++) {
+                    Part p = lst.get(parts[id]);
+                    if (p == null) {
+                        p = new Part(classes.getNode(id).getPackageName());
+                        lst.set(parts[id], p);
+                    }
+                    p.size++;
+                }
+                final Map<Long, Integer> links = new LinkedHashMap<>();
+                for (int e = 0; e < classes.getEdgeCount(); e++) {
+                    final int from = parts[classes.getEdgeFrom(e)];
+                    final int to = parts[classes.getEdgeTo(e)];
+                    if (from != to) {
+                        final Long key = (long) from * count + to;
+                        final Integer n = links.get(key);
+                        links.put(key, n == null ? 1 : n + 1);
+                    }
+                }
+                emitIndex(out, lst, links, files);
+            }
+        };
+    }
+
+    /**
+     * @return emitters of the comma separated names, see {@link #ALL}
+     * @throws IllegalArgumentException for an unknown name
+     */
+    public static List<DiagramEmitter> forNames(final String names) {
+        final List<DiagramEmitter> ret = new ArrayList<>();
+        for (final String n : names.split(",")) {
+            if (n.trim().length() > 0) {
+                ret.add(forName(n.trim()));
+            }
+        }
+        return ret;
+    }
+
+    public static DiagramEmitter forName(final String name) {
+        switch (name.toLowerCase()) {
+            case PLANTUML:
+            case "puml":
+                return plantUml();
+            case MERMAID:
+            case "mmd":
+                return mermaid();
+            case DOT:
+                return dot();
+            case JSON:
+                return json();
+            default:
+                throw new IllegalArgumentException("Unknown diagram format: " + name + ", expected " + ALL);
+        }
+    }
+
+    public static DiagramEmitter plantUml() {
+        return new PlantUml();
+    }
+
+    public static DiagramEmitter mermaid() {
+        return new Mermaid();
+    }
+
+    public static DiagramEmitter dot() {
+        return new Dot();
+    }
+
+    public static DiagramEmitter json() {
+        return new Json();
+    }
+
+    private static boolean isShown(final int[] parts, final int part, final int id) {
+        return parts == null || parts[id] == part;
+    }
+
+    private static String getVisibility(final int mod) {
+        if (Modifier.isPrivate(mod)) {
+            return "-";
+        } else if (Modifier.isProtected(mod)) {
+            return "#";
+        } else if (Modifier.isPublic(mod)) {
+            return "+";
+        }
+        return "";
+    }
+
+    private static class PlantUml extends DiagramEmitter {
+
+        PlantUml() {
+            super(PLANTUML, ".puml");
+        }
+
+        private static String getMemberName(final ClassGraph.Member m) {
+            final int mod = m.getModifiers();
+            String fname = m.getName();
+            final String v = getVisibility(mod);
+            if (v.length() > 0) {
+                fname = " " + v + " " + fname;
+            }
+            if (Modifier.isStatic(mod)) {
+                fname = " {static} " + fname;
+            }
+            return fname;
+        }
+
+        private static void printClass(final CodeWriter sb, final ClassGraph classes, final ClassGraph.Node cl) {
+            final EntityDescriptor d = cl.getDescriptor();
+            sb.append("    ");
+            if (!d.isInterface()) {
+                sb.append(d.isAbstract() ? "abstract " : "");
+            }
+            sb.append(d.getClassType()).append(" ");
+            sb.append(cl.getDisplayName()).append(" ");
+            boolean first = true;
+            for (int e = cl.getFirstEdge(); e < cl.getEdgeEnd(); e++) {
+                if (classes.getEdgeKind(e) == ClassGraph.EXTENDS) {
+                    sb.append(first ? "extends " : ", ");
+                    sb.append(classes.getNode(classes.getEdgeTo(e)).getDisplayName());
+                    first = false;
+                }
+            }
+            sb.append("{\n");
+            for (final ClassGraph.Member m : cl.getMembers()) {
+                sb.append("        ").append(getMemberName(m));
+                if (m.getType() != null) {
+                    sb.append(" : ").append(m.getType().getSimpleName()).append("\n");
+                } else {
+                    sb.append("\n");
+                }
+            }
+            sb.append("    }\n");
+        }
+
+        @Override
+        public void emit(final CodeWriter sb, final ClassGraph classes, final int[] parts, final int part) {
+            sb.append("@startuml\n");
+            sb.append("'=====================GENERATED========================\n");
+            for (int id = classes.size() - 1; id >= 0; id--) {
+                if (!isShown(parts, part, id)) {
+                    continue;
+                }
+                final ClassGraph.Node cl = classes.getNode(id);
+                sb.append("package ").append(cl.getPackageName()).append(" {\n");
+                printClass(sb, classes, cl);
+                sb.append("\n");
+                sb.append("}\n");
+            }
+            for (int id = classes.size() - 1; id >= 0; id--) {
+                if (!isShown(parts, part, id)) {
+                    continue;
+                }
+                final ClassGraph.Node cl = classes.getNode(id);
+                for (int e = cl.getFirstEdge(); e < cl.getEdgeEnd(); e++) {
+                    final int to = classes.getEdgeTo(e);
+                    if (classes.getEdgeKind(e) == ClassGraph.ASSOCIATION && isShown(parts, part, to)) {
+                        sb.append(cl.getDisplayName()).append(" --> ").append(classes.getNode(to).getDisplayName()).append("\n");
+                    }
+                }
+            }
+            sb.append("'=====================end==============================\n");
+            sb.append("@enduml\n");
+        }
+
+        @Override
+        protected void emitIndex(final CodeWriter sb, final List<Part> parts, final Map<Long, Integer> links, final String[] files) {
+            sb.append("@startuml\n");
+            sb.append("'=====================GENERATED========================\n");
+            for (int p = 0; p < parts.size(); p++) {
+                sb.append("rectangle \"").append(parts.get(p).getLabel()).append(" (").append(parts.get(p).getSize()).append(" classes)\" as P").append(p + 1)
+                        .append(" [[").append(files[p]).append("]]\n");
+            }
+            for (final Map.Entry<Long, Integer> l : links.entrySet()) {
+                sb.append("P").append((int) (l.getKey() / parts.size()) + 1).append(" --> P").append((int) (l.getKey() % parts.size()) + 1)
+                        .append(" : ").append(l.getValue()).append("\n");
+            }
+            sb.append("'=====================end==============================\n");
+            sb.append("@enduml\n");
+        }
+    }
+
+    /**
+     * Mermaid class diagram, classes are named C&lt;id&gt; with the display name as the label.
+     */
+    private static class Mermaid extends DiagramEmitter {
+
+        Mermaid() {
+            super(MERMAID, ".mmd");
+        }
+
+        private static String getStereotype(final EntityDescriptor d) {
+            if (d.isInterface()) {
+                return "interface";
+            } else if (d.isEnum()) {
+                return "enumeration";
+            } else if (d.isAbstract()) {
+                return "abstract";
+            }
+            return null;
+        }
+
+        @Override
+        public void emit(final CodeWriter sb, final ClassGraph classes, final int[] parts, final int part) {
+            sb.append("classDiagram\n");
+            for (int id = classes.size() - 1; id >= 0; id--) {
+                if (!isShown(parts, part, id)) {
+                    continue;
+                }
+                final ClassGraph.Node cl = classes.getNode(id);
+                sb.append("    class C").append(id).append("[\"").append(cl.getDisplayName()).append("\"]\n");
+                final String stereotype = getStereotype(cl.getDescriptor());
+                if (stereotype != null) {
+                    sb.append("    <<").append(stereotype).append(">> C").append(id).append("\n");
+                }
+                for (final ClassGraph.Member m : cl.getMembers()) {
+                    sb.append("    C").append(id).append(" : ").append(getVisibility(m.getModifiers()));
+                    if (m.getType() != null) {
+                        sb.append(m.getType().getSimpleName()).append(" ");
+                    }
+                    sb.append(m.getName());
+                    if (Modifier.isStatic(m.getModifiers())) {
+                        sb.append("$");
+                    }
+                    sb.append("\n");
+                }
+            }
+            for (int id = classes.size() - 1; id >= 0; id--) {
+                if (!isShown(parts, part, id)) {
+                    continue;
+                }
+                final ClassGraph.Node cl = classes.getNode(id);
+                for (int e = cl.getFirstEdge(); e < cl.getEdgeEnd(); e++) {
+                    final int to = classes.getEdgeTo(e);
+                    if (classes.getEdgeKind(e) == ClassGraph.EXTENDS) {
+                        if (!isShown(parts, part, to)) {
+                            sb.append("    class C").append(to).append("[\"").append(classes.getNode(to).getDisplayName()).append("\"]\n");
+                        }
+                        sb.append("    C").append(to).append(" <|-- C").append(id).append("\n");
+                    } else if (isShown(parts, part, to)) {
+                        sb.append("    C").append(id).append(" --> C").append(to).append("\n");
+                    }
+                }
+            }
+        }
+
+        @Override
+        protected void emitIndex(final CodeWriter sb, final List<Part> parts, final Map<Long, Integer> links, final String[] files) {
+            sb.append("flowchart LR\n");
+            for (int p = 0; p < parts.size(); p++) {
+                sb.append("    P").append(p + 1).append("[\"").append(parts.get(p).getLabel()).append(" (").append(parts.get(p).getSize()).append(" classes)\"]\n");
+                sb.append("    click P").append(p + 1).append(" \"").append(files[p]).append("\"\n");
+            }
+            for (final Map.Entry<Long, Integer> l : links.entrySet()) {
+                sb.append("    P").append((int) (l.getKey() / parts.size()) + 1).append(" -->|").append(l.getValue())
+                        .append("| P").append((int) (l.getKey() % parts.size()) + 1).append("\n");
+            }
+        }
+    }
+
+    /**
+     * Graphviz digraph, every package is a cluster, every class is a record node n&lt;id&gt;.
+     */
+    private static class Dot extends DiagramEmitter {
+
+        Dot() {
+            super(DOT, ".dot");
+        }
+
+        private static String escape(final String s) {
+            final StringBuilder sb = new StringBuilder(s.length());
+            for (final char c : s.toCharArray()) {
+                if ("{}|<>\"\\ ".indexOf(c) >= 0) {
+                    sb.append('\\');
+                }
+                sb.append(c);
+            }
+            return sb.toString();
+        }
+
+        private static void printNode(final CodeWriter sb, final ClassGraph.Node cl) {
+            final EntityDescriptor d = cl.getDescriptor();
+            sb.append("        n").append(cl.getId()).append(" [label=\"{");
+            if (d.isInterface() || d.isEnum()) {
+                sb.append(escape("<<" + d.getClassType() + ">>")).append("\\n");
+            }
+            sb.append(escape(cl.getDisplayName())).append("|");
+            for (final ClassGraph.Member m : cl.getMembers()) {
+                sb.append(escape(getVisibility(m.getModifiers()) + m.getName()));
+                if (m.getType() != null) {
+                    sb.append(escape(" : " + m.getType().getSimpleName()));
+                }
+                sb.append("\\l");
+            }
+            sb.append("}\"");
+            if (d.isAbstract() && !d.isInterface()) {
+                sb.append(", fontname=\"Helvetica-Oblique\"");
+            }
+            sb.append("];\n");
+        }
+
+        @Override
+        public void emit(final CodeWriter sb, final ClassGraph classes, final int[] parts, final int part) {
+            sb.append("digraph G {\n");
+            sb.append("    node [shape=record, fontname=\"Helvetica\"];\n");
+            final Map<String, List<ClassGraph.Node>> packages = new LinkedHashMap<>();
+            for (int id = classes.size() - 1; id >= 0; id--) {
+                if (!isShown(parts, part, id)) {
+                    continue;
+                }
+                final ClassGraph.Node cl = classes.getNode(id);
+                List<ClassGraph.Node> lst = packages.get(cl.getPackageName());
+                if (lst == null) {
+                    lst = new ArrayList<>();
+                    packages.put(cl.getPackageName(), lst);
+                }
+                lst.add(cl);
+            }
+            int cluster = 0;
+            for (final Map.Entry<String, List<ClassGraph.Node>> p : packages.entrySet()) {
+                sb.append("    subgraph cluster_").append(cluster++).append(" {\n");
+                sb.append("        label=\"").append(p.getKey()).append("\";\n");
+                for (final ClassGraph.Node cl : p.getValue()) {
+                    printNode(sb, cl);
+                }
+                sb.append("    }\n");
+            }
+            for (final List<ClassGraph.Node> lst : packages.values()) {
+                for (final ClassGraph.Node cl : lst) {
+                    for (int e = cl.getFirstEdge(); e < cl.getEdgeEnd(); e++) {
+                        final int to = classes.getEdgeTo(e);
+                        if (classes.getEdgeKind(e) == ClassGraph.EXTENDS) {
+                            if (!isShown(parts, part, to)) {
+                                sb.append("    n").append(to).append(" [label=\"").append(escape(classes.getNode(to).getDisplayName())).append("\", style=dashed];\n");
+                            }
+                            sb.append("    n").append(cl.getId()).append(" -> n").append(to).append(" [arrowhead=empty];\n");
+                        } else if (isShown(parts, part, to)) {
+                            sb.append("    n").append(cl.getId()).append(" -> n").append(to).append(";\n");
+                        }
+                    }
+                }
+            }
+            sb.append("}\n");
+        }
+
+        @Override
+        protected void emitIndex(final CodeWriter sb, final List<Part> parts, final Map<Long, Integer> links, final String[] files) {
+            sb.append("digraph G {\n");
+            sb.append("    node [shape=box, fontname=\"Helvetica\"];\n");
+            for (int p = 0; p < parts.size(); p++) {
+                sb.append("    P").append(p + 1).append(" [label=\"").append(parts.get(p).getLabel()).append(" (").append(parts.get(p).getSize())
+                        .append(" classes)\", URL=\"").append(files[p]).append("\"];\n");
+            }
+            for (final Map.Entry<Long, Integer> l : links.entrySet()) {
+                sb.append("    P").append((int) (l.getKey() / parts.size()) + 1).append(" -> P").append((int) (l.getKey() % parts.size()) + 1)
+                        .append(" [label=\"").append(l.getValue()).append("\"];\n");
+            }
+            sb.append("}\n");
+        }
+    }
+
+    /**
+     * Compact graph: {"nodes":[{"id":0,"name":..,"kind":"class","members":[..]}],"edges":[{"from":0,"to":1,"kind":"extends"}]},
+     * edges to superclasses of other parts point to nodes with "external":true.
+     */
+    private static class Json extends DiagramEmitter {
+
+        Json() {
+            super(JSON, ".json");
+        }
+
+        private static void string(final CodeWriter sb, final String s) {
+            sb.append('"');
+            for (final char c : s.toCharArray()) {
+                if (c == '"' || c == '\\') {
+                    sb.append('\\').append(c);
+                } else if (c < ' ') {
+                    sb.append(String.format("\\u%04x", (int) c));
+                } else {
+                    sb.append(c);
+                }
+            }
+            sb.append('"');
+        }
+
+        private static void printNode(final CodeWriter sb, final ClassGraph.Node cl, final boolean external) {
+            final EntityDescriptor d = cl.getDescriptor();
+            sb.append("{\"id\":").append(cl.getId()).append(",\"name\":");
+            string(sb, cl.getName());
+            sb.append(",\"label\":");
+            string(sb, cl.getDisplayName());
+            sb.append(",\"kind\":");
+            string(sb, d.getClassType());
+            if (d.isAbstract() && !d.isInterface()) {
+                sb.append(",\"abstract\":true");
+            }
+            if (external) {
+                sb.append(",\"external\":true}");
+                return;
+            }
+            sb.append(",\"members\":[");
+            boolean first = true;
+            for (final ClassGraph.Member m : cl.getMembers()) {
+                sb.append(first ? "" : ",").append("{\"name\":");
+                string(sb, m.getName());
+                sb.append(",\"modifiers\":").append(m.getModifiers());
+                if (m.getType() != null) {
+                    sb.append(",\"type\":");
+                    string(sb, m.getType().getName());
+                }
+                sb.append("}");
+                first = false;
+            }
+            sb.append("]}");
+        }
+
+        @Override
+        public void emit(final CodeWriter sb, final ClassGraph classes, final int[] parts, final int part) {
+            final boolean[] external = new boolean[classes.size()];
+            sb.append("{\"nodes\":[");
+            boolean first = true;
+            for (int id = 0; id < classes.size(); id++) {
+                if (isShown(parts, part, id)) {
+                    sb.append(first ? "\n" : ",\n");
+                    printNode(sb, classes.getNode(id), false);
+                    first = false;
+                    final ClassGraph.Node cl = classes.getNode(id);
+                    for (int e = cl.getFirstEdge(); e < cl.getEdgeEnd(); e++) {
+                        if (classes.getEdgeKind(e) == ClassGraph.EXTENDS && !isShown(parts, part, classes.getEdgeTo(e))) {
+                            external[classes.getEdgeTo(e)] = true;
+                        }
+                    }
+                }
+            }
+            for (int id = 0; id < classes.size(); id++) {
+                if (external[id]) {
+                    sb.append(first ? "\n" : ",\n");
+                    printNode(sb, classes.getNode(id), true);
+                    first = false;
+                }
+            }
+            sb.append("],\n\"edges\":[");
+            first = true;
+            for (int e = 0; e < classes.getEdgeCount(); e++) {
+                final int from = classes.getEdgeFrom(e);
+                final int to = classes.getEdgeTo(e);
+                final boolean ext = classes.getEdgeKind(e) == ClassGraph.EXTENDS;
+                if (isShown(parts, part, from) && (ext || isShown(parts, part, to))) {
+                    sb.append(first ? "\n" : ",\n");
+                    sb.append("{\"from\":").append(from).append(",\"to\":").append(to)
+                            .append(",\"kind\":\"").append(ext ? "extends" : "association").append("\"}");
+                    first = false;
+                }
+            }
+            sb.append("]}\n");
+        }
+
+        @Override
+        protected void emitIndex(final CodeWriter sb, final List<Part> parts, final Map<Long, Integer> links, final String[] files) {
+            sb.append("{\"parts\":[");
+            for (int p = 0; p < parts.size(); p++) {
+                sb.append(p == 0 ? "\n" : ",\n");
+                sb.append("{\"id\":").append(p + 1).append(",\"label\":");
+                string(sb, parts.get(p).getLabel());
+                sb.append(",\"size\":").append(parts.get(p).getSize()).append(",\"file\":");
+                string(sb, files[p]);
+                sb.append("}");
+            }
+            sb.append("],\n\"links\":[");
+            boolean first = true;
+            for (final Map.Entry<Long, Integer> l : links.entrySet()) {
+                sb.append(first ? "\n" : ",\n");
+                sb.append("{\"from\":").append((int) (l.getKey() / parts.size()) + 1).append(",\"to\":").append((int) (l.getKey() % parts.size()) + 1)
+                        .append(",\"count\":").append(l.getValue()).append("}");
+                first = false;
+            }
+            sb.append("]}\n");
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright 2018 Veronica Anokhina.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.org.sevn.netbeans.genmodel;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Renders diagrams on a pool of threads and writes them from one writer thread.
+ * The rendered files wait in a bounded queue, so the renderers are held back when the disk is slower,
+ * and a file is not written if its content is the same.
+ * <pre>
+ * try (final DiagramWriter writer = new DiagramWriter(outDir, threads, 64)) {
+ *     writer.submit(path, emitter);
+ * }
+ * </pre>
+ */
+public class DiagramWriter implements Closeable {
+
+    private static final int BATCH = 32;
+    private static final Item END = new Item(null, null);
+
+    private static class Item {
+        private final String path;
+        private final byte[] content;
+
+        Item(final String path, final byte[] content) {
+            this.path = path;
+            this.content = content;
+        }
+    }
+
+    private final File outDir;
+    private final ExecutorService renderers;
+    private final BlockingQueue<Item> queue;
+    private final Thread writer;
+    private final AtomicInteger written = new AtomicInteger();
+    private final AtomicInteger unchanged = new AtomicInteger();
+    private volatile IOException error;
+
+    /**
+     * @param queueSize number of rendered files waiting to be written
+     */
+    public DiagramWriter(final File outDir, final int parallelism, final int queueSize) {
+        this.outDir = outDir;
+        this.renderers = Executors.newFixedThreadPool(Math.max(1, parallelism));
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueSize));
+        this.writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeAll();
+            }
+        }, DiagramWriter.class.getName());
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * @param path file path relative to the output directory
+     */
+    public void submit(final String path, final CodeWriter.Emitter emitter) {
+        renderers.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    queue.put(render(path, emitter));
+                } catch (InterruptedException | CancellationException ex) {
+                    Thread.currentThread().interrupt();
+                } catch (RuntimeException ex) {
+                    fail(new IOException("Can't generate " + path, ex));
+                }
+            }
+        });
+    }
+
+    /**
+     * Builds the graph once on a render thread and writes it in every format to &lt;name&gt;.&lt;ext&gt;.
+     * @param name file path relative to the output directory without the extension
+     */
+    public void submit(final String name, final Callable<ClassGraph> graph, final List<DiagramEmitter> formats) {
+        renderers.execute(new Runnable() {
+            @Override
+            public void run() {
+                String path = name;
+                try {
+                    final ClassGraph classes = graph.call();
+                    for (final DiagramEmitter e : formats) {
+                        path = name + e.getExtension();
+                        queue.put(render(path, e.of(classes)));
+                    }
+                } catch (InterruptedException | CancellationException ex) {
+                    Thread.currentThread().interrupt();
+                } catch (Exception ex) {
+                    fail(new IOException("Can't generate " + path, ex));
+                }
+            }
+        });
+    }
+
+    private static Item render(final String path, final CodeWriter.Emitter emitter) {
+        GenerationMetrics.enter();
+        try {
+            final CodeWriter out = CodeWriter.buffer();
+            emitter.emit(out);
+            final byte[] content = out.toString().getBytes(StandardCharsets.UTF_8);
+            GenerationMetrics.emitted(content.length);
+            return new Item(path, content);
+        } finally {
+            GenerationMetrics.exit(GenerationMetrics.EMIT);
+        }
+    }
+
+    /**
+     * @return number of files written
+     */
+    public int getWritten() {
+        return written.get();
+    }
+
+    /**
+     * @return number of files skipped because their content is the same
+     */
+    public int getUnchanged() {
+        return unchanged.get();
+    }
+
+    private void fail(final IOException ex) {
+        if (error == null) {
+            error = ex;
+        }
+    }
+
+    private void writeAll() {
+        final List<Item> batch = new ArrayList<>(BATCH);
+        try {
+            while (true) {
+                batch.add(queue.take());
+                queue.drainTo(batch, BATCH - 1);
+                for (final Item i : batch) {
+                    if (i == END) {
+                        return;
+                    }
+                    write(i);
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException ex) {
+            // cancelled
+        }
+    }
+
+    private void write(final Item i) {
+        final File out = new File(outDir, i.path);
+        GenerationMetrics.enter();
+        try {
+            if (out.isFile() && out.length() == i.content.length && Arrays.equals(Files.readAllBytes(out.toPath()), i.content)) {
+                unchanged.incrementAndGet();
+            } else {
+                out.getParentFile().mkdirs();
+                Files.write(out.toPath(), i.content);
+                written.incrementAndGet();
+            }
+        } catch (IOException ex) {
+            fail(ex);
+        } catch (RuntimeException ex) {
+            fail(new IOException("Can't write " + i.path, ex));
+        } finally {
+            GenerationMetrics.exit(GenerationMetrics.WRITE);
+        }
+    }
+
+    /**
+     * Waits until all the submitted files are written. If the writer thread has died the renderers are stopped,
+     * nothing would take their files from the queue.
+     * @throws IOException the first error of rendering or writing
+     * @throws CancellationException if the calling thread is interrupted, the rendering is stopped
+     */
+    @Override
+    public void close() throws IOException {
+        renderers.shutdown();
+        try {
+            while (!renderers.awaitTermination(1, TimeUnit.SECONDS)) {
+                if (!writer.isAlive()) {
+                    renderers.shutdownNow();
+                }
+            }
+            if (writer.isAlive()) {
+                queue.put(END);
+                writer.join();
+            } else {
+                fail(new IOException("The writer thread has stopped"));
+            }
+        } catch (InterruptedException ex) {
+            renderers.shutdownNow();
+            writer.interrupt();
+            Thread.currentThread().interrupt();
+            throw new CancellationException();
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+}
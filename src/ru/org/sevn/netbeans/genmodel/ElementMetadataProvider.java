@@ -0,0 +1,392 @@
+/*
+ * Copyright 2018 Veronica Anokhina.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.org.sevn.netbeans.genmodel;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import com.sun.source.util.JavacTask;
+
+/**
+ * Descriptors of the classes being compiled, read from the javac model in an annotation processor,
+ * see {@link ModelProcessor}, or from sources analyzed by javac, see {@link #analyze(List, List)}.
+ * Nothing is loaded, the fields, types and annotations come from the sources.
+ * The javac model is not thread safe, the descriptors are read under the lock of the provider.
+ */
+final class ElementMetadataProvider extends MetadataProvider {
+
+    private static final String[] PERSISTENCE = new String[] {"javax.persistence.", "jakarta.persistence."};
+
+    private final Elements elements;
+    private final Map<String, EntityDescriptor> descriptors = new HashMap<>();
+
+    ElementMetadataProvider(final Elements elements) {
+        this.elements = elements;
+    }
+
+    /**
+     * Parses and attributes the sources with javac, the errors (missing dependencies too) are ignored.
+     * @param sourceRoots source folders
+     * @param classPath class path of the dependencies
+     */
+    static ElementMetadataProvider analyze(final List<File> sourceRoots, final List<File> classPath) throws IOException {
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new IOException("No Java compiler, run with a JDK");
+        }
+        final List<File> files = new ArrayList<>();
+        for (final File r : sourceRoots) {
+            listSources(r, files);
+        }
+        final StandardJavaFileManager fm = compiler.getStandardFileManager(null, null, null);
+        final StringBuilder cp = new StringBuilder();
+        for (final File f : classPath) {
+            if (cp.length() > 0) {
+                cp.append(File.pathSeparator);
+            }
+            cp.append(f.getPath());
+        }
+        final JavacTask task = (JavacTask) compiler.getTask(null, fm, new DiagnosticCollector<JavaFileObject>(),
+                Arrays.asList("-proc:none", "-classpath", cp.toString()), null, fm.getJavaFileObjectsFromFiles(files));
+        GenerationMetrics.enter();
+        try {
+            task.analyze();
+        } finally {
+            GenerationMetrics.exit(GenerationMetrics.LOAD);
+        }
+        return new ElementMetadataProvider(task.getElements());
+    }
+
+    private static void listSources(final File dir, final List<File> ret) {
+        final File[] files = dir.listFiles();
+        if (files != null) {
+            for (final File f : files) {
+                if (f.isDirectory()) {
+                    listSources(f, ret);
+                } else if (f.getName().endsWith(".java")) {
+                    ret.add(f);
+                }
+            }
+        }
+    }
+
+    @Override
+    public Class loadClass(final String className) {
+        return null;
+    }
+
+    @Override
+    public byte[] getBytecode(final String className) {
+        return null;
+    }
+
+    @Override
+    public synchronized EntityDescriptor describe(final String className) {
+        if (className == null) {
+            return null;
+        }
+        if (descriptors.containsKey(className)) {
+            GenerationMetrics.cacheHit();
+            return descriptors.get(className);
+        }
+        final TypeElement te = elements.getTypeElement(className.replace('$', '.'));
+        final EntityDescriptor ret = te == null ? null : describe(te);
+        descriptors.put(className, ret);
+        return ret;
+    }
+
+    public synchronized EntityDescriptor describe(final TypeElement te) {
+        final String name = elements.getBinaryName(te).toString();
+        EntityDescriptor ret = descriptors.get(name);
+        if (ret != null) {
+            GenerationMetrics.cacheHit();
+            return ret;
+        }
+        GenerationMetrics.enter();
+        try {
+            final PackageElement pkg = elements.getPackageOf(te);
+            final String classType;
+            if (te.getKind() == ElementKind.INTERFACE || te.getKind() == ElementKind.ANNOTATION_TYPE) {
+                classType = "interface";
+            } else if (te.getKind() == ElementKind.ENUM) {
+                classType = "enum";
+            } else {
+                classType = "class";
+            }
+            final EntityDescriptor superclass = describe(te.getSuperclass());
+            final List<EntityDescriptor> interfaces = new ArrayList<>();
+            for (final TypeMirror i : te.getInterfaces()) {
+                final EntityDescriptor d = describe(i);
+                if (d != null) {
+                    interfaces.add(d);
+                }
+            }
+            final List<FieldDescriptor> fields = new ArrayList<>();
+            for (final VariableElement f : ElementFilter.fieldsIn(te.getEnclosedElements())) {
+                fields.add(describe(f));
+            }
+            ret = new EntityDescriptor(name,
+                    te.getSimpleName().toString(),
+                    pkg.isUnnamed() ? null : pkg.getQualifiedName().toString(),
+                    classType,
+                    te.getModifiers().contains(Modifier.ABSTRACT),
+                    getPersistencePackage(te),
+                    superclass,
+                    interfaces,
+                    fields);
+        } finally {
+            GenerationMetrics.exit(GenerationMetrics.REFLECT);
+        }
+        descriptors.put(name, ret);
+        return ret;
+    }
+
+    /**
+     * @return descriptor of the class type, null for Object and the other types
+     */
+    private EntityDescriptor describe(final TypeMirror type) {
+        if (type.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+        final TypeElement te = (TypeElement) ((DeclaredType) type).asElement();
+        if (te.getQualifiedName().contentEquals("java.lang.Object")) {
+            return null;
+        }
+        return describe(te);
+    }
+
+    private FieldDescriptor describe(final VariableElement f) {
+        GenerationMetrics.enter();
+        try {
+            int modifiers = 0;
+            for (final Modifier m : f.getModifiers()) {
+                modifiers |= toModifier(m);
+            }
+            if (f.getKind() == ElementKind.ENUM_CONSTANT) {
+                modifiers |= 0x4000;
+            }
+            return new FieldDescriptor(f.getSimpleName().toString(), getTypeName(f.asType()), modifiers,
+                    getColumns(f), getCodegen(f), this);
+        } finally {
+            GenerationMetrics.exit(GenerationMetrics.ANNOTATIONS);
+        }
+    }
+
+    private static int toModifier(final Modifier m) {
+        switch (m) {
+            case PUBLIC:
+                return java.lang.reflect.Modifier.PUBLIC;
+            case PROTECTED:
+                return java.lang.reflect.Modifier.PROTECTED;
+            case PRIVATE:
+                return java.lang.reflect.Modifier.PRIVATE;
+            case STATIC:
+                return java.lang.reflect.Modifier.STATIC;
+            case FINAL:
+                return java.lang.reflect.Modifier.FINAL;
+            case TRANSIENT:
+                return java.lang.reflect.Modifier.TRANSIENT;
+            case VOLATILE:
+                return java.lang.reflect.Modifier.VOLATILE;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * @return erased type in the {@link Class#getName()} form
+     */
+    private String getTypeName(final TypeMirror type) {
+        switch (type.getKind()) {
+            case BOOLEAN:
+            case BYTE:
+            case CHAR:
+            case SHORT:
+            case INT:
+            case LONG:
+            case FLOAT:
+            case DOUBLE:
+                return type.getKind().name().toLowerCase();
+            case ARRAY:
+                return "[" + getDescriptor(((ArrayType) type).getComponentType());
+            case DECLARED:
+                return elements.getBinaryName((TypeElement) ((DeclaredType) type).asElement()).toString();
+            case TYPEVAR:
+                return "java.lang.Object";
+            default:
+                return type.toString();
+        }
+    }
+
+    private String getDescriptor(final TypeMirror type) {
+        switch (type.getKind()) {
+            case BOOLEAN:
+                return "Z";
+            case BYTE:
+                return "B";
+            case CHAR:
+                return "C";
+            case SHORT:
+                return "S";
+            case INT:
+                return "I";
+            case LONG:
+                return "J";
+            case FLOAT:
+                return "F";
+            case DOUBLE:
+                return "D";
+            case ARRAY:
+                return "[" + getDescriptor(((ArrayType) type).getComponentType());
+            default:
+                return "L" + getTypeName(type) + ";";
+        }
+    }
+
+    private static String getAnnotationName(final AnnotationMirror a) {
+        return ((TypeElement) a.getAnnotationType().asElement()).getQualifiedName().toString();
+    }
+
+    private static String getPersistencePackage(final Element e) {
+        for (final AnnotationMirror a : e.getAnnotationMirrors()) {
+            final String ret = EntityDescriptor.getPersistencePackage(getAnnotationName(a));
+            if (ret != null) {
+                return ret;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isPersistence(final String name) {
+        for (final String p : PERSISTENCE) {
+            if (name.startsWith(p)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return values of the annotation with the defaults by the attribute name
+     */
+    private Map<String, Object> getValues(final AnnotationMirror a) {
+        final Map<String, Object> ret = new HashMap<>();
+        for (final Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> v : elements.getElementValuesWithDefaults(a).entrySet()) {
+            ret.put(v.getKey().getSimpleName().toString(), v.getValue().getValue());
+        }
+        return ret;
+    }
+
+    /**
+     * Same as {@link ColumnAttributes#of(java.lang.reflect.Field)}: the *Column annotations and the columns of *Columns.
+     */
+    private ColumnAttributes getColumns(final Element f) {
+        boolean present = false;
+        boolean insertable = true;
+        boolean updatable = true;
+        boolean generated = false;
+        boolean id = false;
+        final List<AnnotationMirror> columns = new ArrayList<>();
+        for (final AnnotationMirror a : f.getAnnotationMirrors()) {
+            final String an = getAnnotationName(a);
+            if (!isPersistence(an)) {
+                continue;
+            }
+            if (ColumnAttributes.isGeneratedValue(an)) {
+                generated = true;
+            } else if (ColumnAttributes.isId(an)) {
+                id = true;
+            } else if (an.endsWith("Column")) {
+                columns.add(a);
+            } else if (an.endsWith("Columns")) {
+                final Object value = getValues(a).get("value");
+                if (value instanceof List) {
+                    for (final Object v : (List) value) {
+                        final Object c = ((AnnotationValue) v).getValue();
+                        if (c instanceof AnnotationMirror) {
+                            columns.add((AnnotationMirror) c);
+                        }
+                    }
+                }
+            }
+        }
+        for (final AnnotationMirror c : columns) {
+            final Map<String, Object> values = getValues(c);
+            if (!values.containsKey("insertable") && !values.containsKey("updatable")) {
+                continue;
+            }
+            present = true;
+            if (Boolean.FALSE.equals(values.get("insertable"))) {
+                insertable = false;
+            }
+            if (Boolean.FALSE.equals(values.get("updatable"))) {
+                updatable = false;
+            }
+        }
+        return ColumnAttributes.of(present, insertable, updatable, generated, id);
+    }
+
+    private CodegenAttributes getCodegen(final Element f) {
+        final String codegen = App.instance().getCodeGenClassName();
+        for (final AnnotationMirror a : f.getAnnotationMirrors()) {
+            if (getAnnotationName(a).equals(codegen)) {
+                final Map<String, Object> values = getValues(a);
+                final Object s = values.get("searchable");
+                return new CodegenAttributes(
+                        s instanceof Boolean ? (Boolean) s : false,
+                        str(values, "getterPrefix"),
+                        str(values, "searchFieldName"),
+                        str(values, "operation"),
+                        str(values, "queryExpression"),
+                        str(values, "joinType"),
+                        str(values, "joinEntityOrField"),
+                        str(values, "joinAlias"),
+                        str(values, "joinOnExpression"),
+                        str(values, "sortKey"));
+            }
+        }
+        return null;
+    }
+
+    private static String str(final Map<String, Object> values, final String name) {
+        final Object v = values.get(name);
+        return v instanceof String ? (String) v : null;
+    }
+}
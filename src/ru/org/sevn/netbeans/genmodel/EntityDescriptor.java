@@ -0,0 +1,271 @@
+/*
+ * Copyright 2018 Veronica Anokhina.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.org.sevn.netbeans.genmodel;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable class metadata shared by all generators.
+ * Reflection is done once for each class, the descriptor lives as long as the class.
+ * A {@link MetadataProvider} that doesn't load classes builds the descriptors from the values,
+ * then {@link #getType()} is null and there are no methods.
+ */
+public final class EntityDescriptor {
+
+    private static final ClassValue<EntityDescriptor> descriptors = new ClassValue<EntityDescriptor>() {
+        @Override
+        protected EntityDescriptor computeValue(final Class<?> type) {
+            GenerationMetrics.enter();
+            try {
+                return new EntityDescriptor(type);
+            } finally {
+                GenerationMetrics.exit(GenerationMetrics.REFLECT);
+            }
+        }
+    };
+
+    public static EntityDescriptor of(final Class cls) {
+        if (cls == null) {
+            return null;
+        }
+        return descriptors.get(cls);
+    }
+
+    private final Class type;
+    private final String name;
+    private final String simpleName;
+    private final String packageName;
+    private final String classType;
+    private final boolean isabstract;
+    private final String persistencePackage;
+    private final EntityDescriptor superclass;
+    private final List<EntityDescriptor> interfaces;
+    private final List<FieldDescriptor> fields;
+    private final List<FieldDescriptor> allFields;
+    private final List<Method> methods;
+
+    /**
+     * @param name class name in the {@link Class#getName()} form
+     * @param packageName package or null for the default package
+     * @param classType class, interface or enum
+     * @param persistencePackage javax.persistence or jakarta.persistence of the Entity annotation, null if the class isn't an entity
+     * @param superclass descriptor of the superclass or null if the class extends Object
+     */
+    public EntityDescriptor(final String name,
+            final String simpleName,
+            final String packageName,
+            final String classType,
+            final boolean isabstract,
+            final String persistencePackage,
+            final EntityDescriptor superclass,
+            final List<EntityDescriptor> interfaces,
+            final List<FieldDescriptor> fields) {
+        this.type = null;
+        this.name = name;
+        this.simpleName = simpleName;
+        this.packageName = packageName;
+        this.classType = classType;
+        this.isabstract = isabstract;
+        this.persistencePackage = persistencePackage;
+        this.superclass = superclass;
+        this.interfaces = Collections.unmodifiableList(new ArrayList<>(interfaces));
+        this.fields = Collections.unmodifiableList(new ArrayList<>(fields));
+        if (superclass == null) {
+            this.allFields = this.fields;
+        } else {
+            final List<FieldDescriptor> all = new ArrayList<>(this.fields);
+            all.addAll(superclass.getAllFields());
+            this.allFields = Collections.unmodifiableList(all);
+        }
+        this.methods = Collections.emptyList();
+    }
+
+    /**
+     * @return descriptor of a type that can't be found: a class without fields
+     */
+    public static EntityDescriptor unresolved(final String name) {
+        final String pkg = ClassNames.getPackage(name);
+        final String simpleName = name.substring(name.lastIndexOf('.') + 1);
+        return new EntityDescriptor(name, simpleName.substring(simpleName.lastIndexOf('$') + 1), pkg, "class", false, null, null,
+                Collections.<EntityDescriptor>emptyList(), Collections.<FieldDescriptor>emptyList());
+    }
+
+    private EntityDescriptor(final Class srcClass) {
+        this.type = srcClass;
+        this.name = srcClass.getName();
+        this.simpleName = srcClass.getSimpleName();
+        this.packageName = srcClass.getPackage() == null ? null : srcClass.getPackage().getName();
+        if (srcClass.isInterface()) {
+            classType = "interface";
+        } else if (srcClass.isEnum()) {
+            classType = "enum";
+        } else {
+            classType = "class";
+        }
+        this.isabstract = Modifier.isAbstract(srcClass.getModifiers());
+        String persistence = null;
+        for (final Annotation a : srcClass.getAnnotations()) {
+            if (persistence == null) {
+                persistence = getPersistencePackage(a.annotationType().getName());
+            }
+        }
+        this.persistencePackage = persistence;
+
+        final Class sclass = srcClass.getSuperclass();
+        if (sclass == null || Object.class.equals(sclass)) {
+            this.superclass = null;
+        } else {
+            this.superclass = of(sclass);
+        }
+        final List<EntityDescriptor> ifaces = new ArrayList<>();
+        for (final Class i : srcClass.getInterfaces()) {
+            ifaces.add(of(i));
+        }
+        this.interfaces = Collections.unmodifiableList(ifaces);
+
+        final List<FieldDescriptor> flds = new ArrayList<>();
+        for (final Field f : srcClass.getDeclaredFields()) {
+            flds.add(new FieldDescriptor(f));
+        }
+        this.fields = Collections.unmodifiableList(flds);
+        if (superclass == null) {
+            this.allFields = fields;
+        } else {
+            final List<FieldDescriptor> all = new ArrayList<>(fields);
+            all.addAll(superclass.getAllFields());
+            this.allFields = Collections.unmodifiableList(all);
+        }
+        this.methods = Collections.unmodifiableList(Arrays.asList(srcClass.getDeclaredMethods()));
+    }
+
+    /**
+     * @return the class or null if it isn't loaded
+     */
+    public Class getType() {
+        return type;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getSimpleName() {
+        return simpleName;
+    }
+
+    public String getPackageName() {
+        return packageName;
+    }
+
+    /**
+     * @return class, interface or enum
+     */
+    public String getClassType() {
+        return classType;
+    }
+
+    public boolean isInterface() {
+        return "interface".equals(classType);
+    }
+
+    public boolean isEnum() {
+        return "enum".equals(classType);
+    }
+
+    public boolean isAbstract() {
+        return isabstract;
+    }
+
+    /**
+     * @return true if the class is annotated with javax.persistence or jakarta.persistence Entity
+     */
+    public boolean isEntity() {
+        return persistencePackage != null;
+    }
+
+    /**
+     * @return javax.persistence or jakarta.persistence of the Entity annotation, null if the class isn't an entity
+     */
+    public String getPersistencePackage() {
+        return persistencePackage;
+    }
+
+    /**
+     * @param annotationName name of a class annotation
+     * @return javax.persistence or jakarta.persistence for their Entity, null for other annotations
+     */
+    public static String getPersistencePackage(final String annotationName) {
+        if ("javax.persistence.Entity".equals(annotationName)) {
+            return "javax.persistence";
+        } else if ("jakarta.persistence.Entity".equals(annotationName)) {
+            return "jakarta.persistence";
+        }
+        return null;
+    }
+
+    /**
+     * @return descriptor of the superclass or null if the class extends Object
+     */
+    public EntityDescriptor getSuperclass() {
+        return superclass;
+    }
+
+    public List<EntityDescriptor> getInterfaces() {
+        return interfaces;
+    }
+
+    /**
+     * @return declared fields
+     */
+    public List<FieldDescriptor> getFields() {
+        return fields;
+    }
+
+    /**
+     * @return declared fields followed by the fields of the superclasses
+     */
+    public List<FieldDescriptor> getAllFields() {
+        return allFields;
+    }
+
+    public FieldDescriptor getField(final String fieldName) {
+        for (final FieldDescriptor f : fields) {
+            if (f.getName().equals(fieldName)) {
+                return f;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return declared methods
+     */
+    public List<Method> getMethods() {
+        return methods;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2018 Veronica Anokhina.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.org.sevn.netbeans.genmodel;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable field metadata read once from reflection or from a {@link MetadataProvider} that doesn't load classes,
+ * see {@link EntityDescriptor}.
+ */
+public final class FieldDescriptor {
+
+    private static final List<String> PRIMITIVES = Arrays.asList("boolean", "byte", "char", "short", "int", "long", "float", "double", "void");
+
+    private final String name;
+    private final String typeName;
+    private final Class type;
+    private final MetadataProvider provider;
+    private final int modifiers;
+    private final boolean importable;
+    private final ColumnAttributes columns;
+    private final CodegenAttributes codegen;
+    private volatile EntityDescriptor typeDescriptor;
+
+    FieldDescriptor(final Field f) {
+        this.name = f.getName();
+        this.type = f.getType();
+        this.provider = null;
+        this.typeName = type.getName();
+        this.modifiers = f.getModifiers();
+        this.importable = !(type.isArray() ||
+                type.isPrimitive() ||
+                type.isSynthetic() ||
+                typeName.startsWith("java.lang.")
+                );
+        GenerationMetrics.fieldVisited();
+        GenerationMetrics.enter();
+        try {
+            this.columns = ColumnAttributes.of(f);
+            this.codegen = CodegenUtil.getCodegen(App.instance().getCodeGenClassName(), f);
+        } finally {
+            GenerationMetrics.exit(GenerationMetrics.ANNOTATIONS);
+        }
+    }
+
+    /**
+     * Field of a class that isn't loaded.
+     * @param typeName type in the {@link Class#getName()} form
+     * @param provider provider of the descriptor of the type
+     */
+    public FieldDescriptor(final String name, final String typeName, final int modifiers,
+            final ColumnAttributes columns, final CodegenAttributes codegen, final MetadataProvider provider) {
+        this.name = name;
+        this.type = null;
+        this.typeName = typeName;
+        this.provider = provider;
+        this.modifiers = modifiers;
+        this.importable = !(typeName.startsWith("[") ||
+                PRIMITIVES.contains(typeName) ||
+                typeName.startsWith("java.lang.")
+                );
+        this.columns = columns;
+        this.codegen = codegen;
+        GenerationMetrics.fieldVisited();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return {@link Class#getName()} of the field type
+     */
+    public String getTypeName() {
+        return typeName;
+    }
+
+    /**
+     * @return the type or null if the class of the field isn't loaded
+     */
+    public Class getType() {
+        return type;
+    }
+
+    /**
+     * @return descriptor of the type, a descriptor without fields if the type can't be found
+     */
+    public EntityDescriptor getTypeDescriptor() {
+        EntityDescriptor ret = typeDescriptor;
+        if (ret == null) {
+            if (type != null) {
+                ret = EntityDescriptor.of(type);
+            } else {
+                ret = provider == null ? null : provider.describe(typeName);
+                if (ret == null) {
+                    ret = EntityDescriptor.unresolved(typeName);
+                }
+            }
+            typeDescriptor = ret;
+        }
+        return ret;
+    }
+
+    public int getModifiers() {
+        return modifiers;
+    }
+
+    /**
+     * @return false for arrays, primitives, synthetic and java.lang types
+     */
+    public boolean isImportable() {
+        return importable;
+    }
+
+    /**
+     * @return false if a persistence column annotation has insertable=false
+     */
+    public boolean isInsertable() {
+        return columns.isInsertable();
+    }
+
+    /**
+     * @return false if a persistence column annotation has updatable=false
+     */
+    public boolean isUpdatable() {
+        return columns.isUpdatable();
+    }
+
+    /**
+     * @return true if the field has GeneratedValue
+     */
+    public boolean isGenerated() {
+        return columns.isGenerated();
+    }
+
+    /**
+     * @return true if the field has Id
+     */
+    public boolean isId() {
+        return columns.isId();
+    }
+
+    public ColumnAttributes getColumns() {
+        return columns;
+    }
+
+    /**
+     * @return attributes of the Codegen annotation or null if the field is not annotated
+     */
+    public CodegenAttributes getCodegen() {
+        return codegen;
+    }
+
+    @Override
+    public String toString() {
+        return typeName + " " + name;
+    }
+}
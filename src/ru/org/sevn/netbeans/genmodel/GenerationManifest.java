@@ -0,0 +1,184 @@
+/*
+ * Copyright 2018 Veronica Anokhina.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.org.sevn.netbeans.genmodel;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Remembers for every source class the hash of the classes it's generated from and the hashes of the files generated from it,
+ * so that a class is regenerated only if one of these classes or one of its outputs changed, see {@link BatchGenerator#getSourceHash(String)}.
+ * <pre>
+ * class.&lt;class name&gt;=&lt;source hash&gt;
+ * outputs.&lt;class name&gt;=&lt;path&gt;,&lt;path&gt;
+ * output.&lt;path&gt;=&lt;content hash&gt;
+ * entity.&lt;class name&gt;=&lt;bytecode hash&gt;:&lt;true|false&gt;
+ * </pre>
+ */
+public class GenerationManifest {
+
+    public static final String FILE_NAME = ".genmodel-manifest.properties";
+
+    private static final String CONFIG = "config";
+    private static final String CLASS = "class.";
+    private static final String OUTPUTS = "outputs.";
+    private static final String OUTPUT = "output.";
+    private static final String ENTITY = "entity.";
+
+    private final File outDir;
+    private final Properties props = new Properties();
+
+    /**
+     * @param config generator settings, the manifest is dropped if they differ from the saved ones
+     */
+    public static GenerationManifest load(final File outDir, final String config) throws IOException {
+        final GenerationManifest ret = create(outDir, config);
+        final File file = ret.getFile();
+        if (file.isFile()) {
+            try (final InputStream in = Files.newInputStream(file.toPath())) {
+                ret.props.load(in);
+            }
+            if (!config.equals(ret.props.getProperty(CONFIG))) {
+                ret.props.clear();
+            }
+        }
+        ret.props.setProperty(CONFIG, config);
+        return ret;
+    }
+
+    /**
+     * @return empty manifest, the saved one is overwritten on {@link #save()}
+     */
+    public static GenerationManifest create(final File outDir, final String config) {
+        final GenerationManifest ret = new GenerationManifest(outDir);
+        ret.props.setProperty(CONFIG, config);
+        return ret;
+    }
+
+    private GenerationManifest(final File outDir) {
+        this.outDir = outDir;
+    }
+
+    public File getFile() {
+        return new File(outDir, FILE_NAME);
+    }
+
+    /**
+     * @return files generated from the class if the source hash is the same and the files are not changed, otherwise null
+     */
+    public synchronized List<File> getUpToDate(final String className, final String sourceHash) {
+        if (sourceHash == null || !sourceHash.equals(props.getProperty(CLASS + className))) {
+            return null;
+        }
+        final String outputs = props.getProperty(OUTPUTS + className);
+        if (outputs == null) {
+            return null;
+        }
+        final List<File> ret = new ArrayList<>();
+        for (final String path : outputs.split(",")) {
+            if (path.length() == 0) {
+                continue;
+            }
+            final File f = new File(outDir, path);
+            if (!f.isFile()) {
+                return null;
+            }
+            try {
+                if (!hash(Files.readAllBytes(f.toPath())).equals(props.getProperty(OUTPUT + path))) {
+                    return null;
+                }
+            } catch (IOException ex) {
+                return null;
+            }
+            ret.add(f);
+        }
+        return ret;
+    }
+
+    public synchronized void update(final String className, final String sourceHash, final List<BatchGenerator.Output> outputs) {
+        if (sourceHash == null) {
+            remove(className);
+            return;
+        }
+        final StringBuilder paths = new StringBuilder();
+        for (final BatchGenerator.Output o : outputs) {
+            if (paths.length() > 0) {
+                paths.append(",");
+            }
+            paths.append(o.getPath());
+            props.setProperty(OUTPUT + o.getPath(), o.getHash());
+        }
+        props.setProperty(CLASS + className, sourceHash);
+        props.setProperty(OUTPUTS + className, paths.toString());
+    }
+
+    /**
+     * @return whether the class with this bytecode hash was an entity or null if it's not known
+     */
+    public synchronized Boolean isEntity(final String className, final String bytecodeHash) {
+        final String v = props.getProperty(ENTITY + className);
+        if (v != null && bytecodeHash != null && v.startsWith(bytecodeHash + ":")) {
+            return Boolean.valueOf(v.substring(bytecodeHash.length() + 1));
+        }
+        return null;
+    }
+
+    public synchronized void setEntity(final String className, final String bytecodeHash, final boolean entity) {
+        if (bytecodeHash != null) {
+            props.setProperty(ENTITY + className, bytecodeHash + ":" + entity);
+        }
+    }
+
+    public synchronized void remove(final String className) {
+        props.remove(CLASS + className);
+        props.remove(OUTPUTS + className);
+    }
+
+    public synchronized void save() throws IOException {
+        outDir.mkdirs();
+        try (final OutputStream out = Files.newOutputStream(getFile().toPath())) {
+            props.store(out, "ModelGenerator");
+        }
+    }
+
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    public static String hash(final byte[] bytes) {
+        return toHex(newDigest().digest(bytes));
+    }
+
+    public static String toHex(final byte[] digest) {
+        final StringBuilder sb = new StringBuilder(digest.length * 2);
+        for (final byte b : digest) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2018 Veronica Anokhina.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.org.sevn.netbeans.genmodel;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.ObjectName;
+
+/**
+ * Timings of the generation phases and counters, registered as the MBean
+ * ru.org.sevn.netbeans.genmodel:type=GenerationMetrics.
+ * A phase is timed between {@link #enter()} and {@link #exit(int)} on the same thread, the time of a nested phase
+ * is not counted in the outer one. Streamed files count emission and writing as {@link #EMIT}.
+ * Every {@link Run} logs one line with what was counted while it ran:
+ * <pre>
+ * genmodel run="batch" time=812ms load=95ms reflect=120ms annotations=31ms emit=402ms write=40ms classes=57 fields=640 bytes=1288211 cacheHits=3310
+ * </pre>
+ * Runs going on at the same time are counted in each other.
+ */
+public final class GenerationMetrics implements GenerationMetricsMBean {
+
+    public static final int LOAD = 0;
+    public static final int REFLECT = 1;
+    public static final int ANNOTATIONS = 2;
+    public static final int EMIT = 3;
+    public static final int WRITE = 4;
+
+    private static final String[] PHASES = {"load", "reflect", "annotations", "emit", "write"};
+    private static final int CLASSES = PHASES.length;
+    private static final int FIELDS = CLASSES + 1;
+    private static final int BYTES = CLASSES + 2;
+    private static final int HITS = CLASSES + 3;
+    private static final int RUNS = CLASSES + 4;
+    private static final int SIZE = CLASSES + 5;
+
+    private static final Logger LOG = Logger.getLogger(GenerationMetrics.class.getName());
+    private static final GenerationMetrics instance = new GenerationMetrics();
+
+    private static final class Frames {
+        private long[] start = new long[8];
+        private long[] nested = new long[8];
+        private int depth;
+    }
+
+    private static final ThreadLocal<Frames> frames = new ThreadLocal<Frames>() {
+        @Override
+        protected Frames initialValue() {
+            return new Frames();
+        }
+    };
+
+    private final AtomicLongArray values = new AtomicLongArray(SIZE);
+    private final AtomicReference<String> lastRun = new AtomicReference<>("");
+    private volatile boolean registered;
+
+    private GenerationMetrics() {
+    }
+
+    public static GenerationMetrics instance() {
+        return instance;
+    }
+
+    /**
+     * Starts timing a phase, must be followed by {@link #exit(int)} in finally.
+     */
+    public static void enter() {
+        final Frames f = frames.get();
+        if (f.depth == f.start.length) {
+            f.start = Arrays.copyOf(f.start, f.depth * 2);
+            f.nested = Arrays.copyOf(f.nested, f.depth * 2);
+        }
+        f.start[f.depth] = System.nanoTime();
+        f.nested[f.depth] = 0;
+        f.depth++;
+    }
+
+    /**
+     * @param phase {@link #LOAD}, {@link #REFLECT}, {@link #ANNOTATIONS}, {@link #EMIT} or {@link #WRITE}
+     */
+    public static void exit(final int phase) {
+        final Frames f = frames.get();
+        f.depth--;
+        final long time = System.nanoTime() - f.start[f.depth];
+        instance.values.addAndGet(phase, time - f.nested[f.depth]);
+        if (f.depth > 0) {
+            f.nested[f.depth - 1] += time;
+        }
+    }
+
+    public static void classLoaded() {
+        instance.values.incrementAndGet(CLASSES);
+    }
+
+    public static void fieldVisited() {
+        instance.values.incrementAndGet(FIELDS);
+    }
+
+    public static void emitted(final long bytes) {
+        instance.values.addAndGet(BYTES, bytes);
+    }
+
+    public static void cacheHit() {
+        instance.values.incrementAndGet(HITS);
+    }
+
+    /**
+     * Counters of one generation, {@link #end()} logs them and keeps them as {@link #getLastRun()}.
+     */
+    public static final class Run {
+        private final String name;
+        private final long start = System.nanoTime();
+        private final long[] begin = new long[SIZE];
+
+        private Run(final String name) {
+            this.name = name;
+            for (int i = 0; i < SIZE; i++) {
+                begin[i] = instance.values.get(i);
+            }
+        }
+
+        /**
+         * @return the log line
+         */
+        public String end() {
+            instance.values.incrementAndGet(RUNS);
+            final StringBuilder sb = new StringBuilder("genmodel run=\"").append(name.replace("\"", "'")).append("\"");
+            sb.append(" time=").append(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).append("ms");
+            for (int i = 0; i < PHASES.length; i++) {
+                sb.append(" ").append(PHASES[i]).append("=").append(TimeUnit.NANOSECONDS.toMillis(instance.values.get(i) - begin[i])).append("ms");
+            }
+            sb.append(" classes=").append(instance.values.get(CLASSES) - begin[CLASSES]);
+            sb.append(" fields=").append(instance.values.get(FIELDS) - begin[FIELDS]);
+            sb.append(" bytes=").append(instance.values.get(BYTES) - begin[BYTES]);
+            sb.append(" cacheHits=").append(instance.values.get(HITS) - begin[HITS]);
+            final String line = sb.toString();
+            instance.lastRun.set(line);
+            LOG.info(line);
+            return line;
+        }
+    }
+
+    public static Run begin(final String name) {
+        instance.register();
+        return new Run(name);
+    }
+
+    private void register() {
+        if (!registered) {
+            synchronized (this) {
+                if (!registered) {
+                    registered = true;
+                    try {
+                        ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName("ru.org.sevn.netbeans.genmodel:type=GenerationMetrics"));
+                    } catch (Exception ex) {
+                        LOG.log(Level.FINE, "Can't register the metrics MBean", ex);
+                    }
+                }
+            }
+        }
+    }
+
+    private long millis(final int phase) {
+        return TimeUnit.NANOSECONDS.toMillis(values.get(phase));
+    }
+
+    @Override
+    public long getRuns() {
+        return values.get(RUNS);
+    }
+
+    @Override
+    public String getLastRun() {
+        return lastRun.get();
+    }
+
+    @Override
+    public long getLoadMillis() {
+        return millis(LOAD);
+    }
+
+    @Override
+    public long getReflectMillis() {
+        return millis(REFLECT);
+    }
+
+    @Override
+    public long getAnnotationsMillis() {
+        return millis(ANNOTATIONS);
+    }
+
+    @Override
+    public long getEmitMillis() {
+        return millis(EMIT);
+    }
+
+    @Override
+    public long getWriteMillis() {
+        return millis(WRITE);
+    }
+
+    @Override
+    public long getClassesLoaded() {
+        return values.get(CLASSES);
+    }
+
+    @Override
+    public long getFieldsVisited() {
+        return values.get(FIELDS);
+    }
+
+    @Override
+    public long getBytesEmitted() {
+        return values.get(BYTES);
+    }
+
+    @Override
+    public long getCacheHits() {
+        return values.get(HITS);
+    }
+
+    @Override
+    public void reset() {
+        for (int i = 0; i < SIZE; i++) {
+            values.set(i, 0);
+        }
+        lastRun.set("");
+    }
+}
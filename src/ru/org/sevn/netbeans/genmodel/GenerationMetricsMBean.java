@@ -0,0 +1,49 @@
+/*
+ * Copyright 2018 Veronica Anokhina.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.org.sevn.netbeans.genmodel;
+
+/**
+ * JMX view of {@link GenerationMetrics}, totals since the start or the last reset.
+ */
+public interface GenerationMetricsMBean {
+
+    long getRuns();
+
+    /**
+     * @return log line of the last finished run
+     */
+    String getLastRun();
+
+    long getLoadMillis();
+
+    long getReflectMillis();
+
+    long getAnnotationsMillis();
+
+    long getEmitMillis();
+
+    long getWriteMillis();
+
+    long getClassesLoaded();
+
+    long getFieldsVisited();
+
+    long getBytesEmitted();
+
+    long getCacheHits();
+
+    void reset();
+}
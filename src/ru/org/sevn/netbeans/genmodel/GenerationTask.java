@@ -0,0 +1,94 @@
+/*
+ * Copyright 2018 Veronica Anokhina.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.org.sevn.netbeans.genmodel;
+
+import java.awt.EventQueue;
+import java.util.concurrent.CancellationException;
+import org.netbeans.api.progress.ProgressHandle;
+import org.openide.util.Cancellable;
+import org.openide.util.Exceptions;
+import org.openide.util.RequestProcessor;
+
+/**
+ * Runs the class loading and code generation off the event thread with a progress handle in the status bar.
+ * Only {@link #done} is called on the event thread, cancelling interrupts the generation,
+ * long loops call {@link Cancellation#check()}.
+ */
+public abstract class GenerationTask<T> implements Runnable, Cancellable {
+
+    private static final RequestProcessor RP = new RequestProcessor(GenerationTask.class.getName(), 1, true);
+
+    private final String title;
+    private volatile RequestProcessor.Task task;
+    private volatile boolean cancelled;
+
+    public GenerationTask(final String title) {
+        this.title = title;
+    }
+
+    /**
+     * Called in the background.
+     * @return result passed to {@link #done}, null for nothing to do
+     */
+    protected abstract T compute() throws Exception;
+
+    /**
+     * Called on the event thread if the task wasn't cancelled.
+     */
+    protected abstract void done(final T result);
+
+    public RequestProcessor.Task schedule() {
+        task = RP.post(this);
+        return task;
+    }
+
+    @Override
+    public void run() {
+        final ProgressHandle handle = ProgressHandle.createHandle(title, this);
+        final GenerationMetrics.Run metrics = GenerationMetrics.begin(title);
+        handle.start();
+        try {
+            final T result = compute();
+            if (result != null && !cancelled) {
+                EventQueue.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        done(result);
+                    }
+                });
+            }
+        } catch (CancellationException ex) {
+            // cancelled by user
+        } catch (Exception ex) {
+            if (!cancelled) {
+                Exceptions.printStackTrace(ex);
+            }
+        } finally {
+            handle.finish();
+            metrics.end();
+        }
+    }
+
+    @Override
+    public boolean cancel() {
+        cancelled = true;
+        final RequestProcessor.Task t = task;
+        if (t != null) {
+            t.cancel();
+        }
+        return true;
+    }
+}
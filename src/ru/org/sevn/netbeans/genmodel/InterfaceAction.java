@@ -40,7 +40,6 @@ import org.openide.loaders.DataObject;
 import org.openide.util.Exceptions;
 import org.openide.util.Lookup;
 import org.openide.util.NbBundle.Messages;
-import static ru.org.sevn.netbeans.genmodel.BaseAction.getClassFields;
 
 //@ActionID(
 //        category = "File",
@@ -87,7 +86,24 @@ public final class InterfaceAction implements ActionListener {
                     case "java":
                         final SourceGroup sg = Util.getSourceGroup(editedFile);
                         if (sg != null) {
-                            formatJava(sg, editedFile);
+                            new GenerationTask<String>("Generating interface for " + editedFile.getNameExt()) {
+                                @Override
+                                protected String compute() {
+                                    GenerationMetrics.enter();
+                                    try {
+                                        final String generated = formatJava(sg, editedFile);
+                                        GenerationMetrics.emitted(generated.length());
+                                        return generated;
+                                    } finally {
+                                        GenerationMetrics.exit(GenerationMetrics.EMIT);
+                                    }
+                                }
+
+                                @Override
+                                protected void done(final String generated) {
+                                    ask(editedFile, generated);
+                                }
+                            }.schedule();
                             return;
                         }
                 }
@@ -109,7 +125,7 @@ public final class InterfaceAction implements ActionListener {
     }
     
     private static boolean addInUsed(final Class cls, final String editedFilePackage) {
-        final String pkg = Util.getPackage(cls.getName());
+        final String pkg = ClassNames.getPackage(cls.getName());
 
         return !(cls.isArray() || 
                 cls.isPrimitive() || 
@@ -120,10 +136,10 @@ public final class InterfaceAction implements ActionListener {
     }
     
     public static StringBuilder getMethods(final HashSet<String> usedClasses, final Class cls) {
-        final String editedFilePackage = Util.getPackage(cls.getName());
+        final String editedFilePackage = ClassNames.getPackage(cls.getName());
         final HashMap<String, StringBuilder> ret = new HashMap();
         if (cls != null) {
-            for (final Method m : cls.getDeclaredMethods()) {
+            for (final Method m : EntityDescriptor.of(cls).getMethods()) {
                 if (m.getName().startsWith("get") && m.getParameterCount() == 0 ||
                         m.getName().startsWith("is") && m.getParameterCount() == 0
                         ) {
@@ -133,7 +149,7 @@ public final class InterfaceAction implements ActionListener {
                         usedClasses.add(returnType.getName());
                     }
                     ret.put(m.getName(), 
-                        new StringBuilder().append("    ").append(Util.getClassNameShort(returnType.toString())).append(" ").append(m.getName()).append("();\n")
+                        new StringBuilder().append("    ").append(ClassNames.getClassNameShort(returnType.toString())).append(" ").append(m.getName()).append("();\n")
                             );
                 } else if (m.getName().startsWith("set") && m.getParameterCount() == 1) {
                     final Class setType = m.getParameterTypes()[0];
@@ -141,7 +157,7 @@ public final class InterfaceAction implements ActionListener {
                         usedClasses.add(setType.getName());
                     }
                     ret.put(m.getName(), 
-                        new StringBuilder().append("    ").append("void").append(" ").append(m.getName()).append("(").append(Util.getClassNameShort(setType.toString())).append(" the").append(Util.getClassNameShort(setType.toString(), "")).append(");\n")
+                        new StringBuilder().append("    ").append("void").append(" ").append(m.getName()).append("(").append(ClassNames.getClassNameShort(setType.toString())).append(" the").append(ClassNames.getClassNameShort(setType.toString(), "")).append(");\n")
                     );
                 }
             }
@@ -162,14 +178,15 @@ public final class InterfaceAction implements ActionListener {
             return n + "Stub";
         }
     }
-    private void formatJava(final SourceGroup sg, final FileObject editedFile) {
+    /**
+     * Called in the background, see {@link GenerationTask}.
+     */
+    private String formatJava(final SourceGroup sg, final FileObject editedFile) {
         final String editedFileClassNameFull = Util.getClassName(editedFile);
-        final String editedFileClassName = Util.getClassNameShort(editedFileClassNameFull);
-        final String editedFilePackage = Util.getPackage(editedFileClassNameFull);
+        final String editedFileClassName = ClassNames.getClassNameShort(editedFileClassNameFull);
+        final String editedFilePackage = ClassNames.getPackage(editedFileClassNameFull);
         final String genName = getGenName(editedFile.getName());
         
-        final FileObject dir = editedFile.getParent();
-        final FileObject genFile = dir.getFileObject(genName, "java");
         final StringBuilder sb = new StringBuilder();
         final HashSet<String> usedClasses = makeUsedClasses();
         final Class srcClass = Util.loadClassAny(editedFileClassNameFull, sg.getRootFolder());
@@ -188,7 +205,7 @@ public final class InterfaceAction implements ActionListener {
             final Class superCls = srcClass.getSuperclass();
             if (superCls != null) {
                 if (!superCls.getName().startsWith("java.lang.")) {
-                    extendsStr = " extends " + getGenName(Util.getClassNameShort(superCls.getName())) + " ";
+                    extendsStr = " extends " + getGenName(ClassNames.getClassNameShort(superCls.getName())) + " ";
                     if (addInUsed(superCls, editedFilePackage)) {
                         usedClasses.add(superCls.getName());
                     }
@@ -213,14 +230,20 @@ public final class InterfaceAction implements ActionListener {
         sb.append("}\n");
         sb.append("//").append(editedFileClassName).append("\n");
         sb.append("//=====================end==============================\n");
-
-        Object askres = Util.ask("Copy result to clipboard?", sb.toString(), new Object[] { "Copy", "Append", "Insert", "Cancel" }, "Append");
+        return sb.toString();
+    }
+    
+    private void ask(final FileObject editedFile, final String generated) {
+        final String genName = getGenName(editedFile.getName());
+        final FileObject dir = editedFile.getParent();
+        final FileObject genFile = dir.getFileObject(genName, "java");
+        Object askres = Util.ask("Copy result to clipboard?", generated, new Object[] { "Copy", "Append", "Insert", "Cancel" }, "Append");
         if ( "Copy".equals(askres) ) {
-            if (!Util.setClipboardContents(sb.toString())) {
+            if (!Util.setClipboardContents(generated)) {
                 Util.err("Can't copy to clipboard");
             }
         } else if ( "Append".equals(askres) ) {
-            if (!Util.appendClipboardContents(sb.toString())) {
+            if (!Util.appendClipboardContents(generated)) {
                 Util.err("Can't append to clipboard");
             }
         } else if ( "Insert".equals(askres) ) {
@@ -228,7 +251,7 @@ public final class InterfaceAction implements ActionListener {
                 try {
                     final FileObject createdFile = dir.createData(genName, "java");
                     try (final OutputStream os = createdFile.getOutputStream()) {
-                        os.write(sb.toString().getBytes("UTF-8"));
+                        os.write(generated.getBytes("UTF-8"));
                     }
                 } catch (IOException ex) {
                     Util.err("Can't create file:" + genName + ".java");
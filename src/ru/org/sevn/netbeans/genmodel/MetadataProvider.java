@@ -0,0 +1,171 @@
+/*
+ * Copyright 2018 Veronica Anokhina.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.org.sevn.netbeans.genmodel;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.lang.model.util.Elements;
+import org.netbeans.api.java.classpath.ClassPath;
+import org.netbeans.api.project.SourceGroup;
+import org.openide.filesystems.FileObject;
+
+/**
+ * Where the generators get classes and their descriptors from:
+ * the project class path in the IDE or a plain class loader in batch mode.
+ * {@link #forBytecode(MetadataProvider)} and {@link #forSources(List, List)} read the descriptors without loading
+ * the classes, so the static initializers, weaving and the dependencies of the user classes are never run.
+ */
+public abstract class MetadataProvider {
+
+    /**
+     * @return the class or null if it can't be loaded
+     */
+    public abstract Class loadClass(final String className);
+
+    /**
+     * @return content of the class file or null if it isn't found, the class is not loaded
+     */
+    public abstract byte[] getBytecode(final String className);
+
+    /**
+     * @return descriptor of the class or null if it can't be loaded
+     */
+    public EntityDescriptor describe(final String className) {
+        return EntityDescriptor.of(loadClass(className));
+    }
+
+    /**
+     * Descriptors are read from the class files of the compiled classes, the class is loaded only if there is no class file.
+     */
+    public static MetadataProvider forSourceGroup(final SourceGroup sg) {
+        return new MetadataProvider() {
+            private final MetadataProvider bytecode = forBytecode(this);
+
+            @Override
+            public EntityDescriptor describe(final String className) {
+                final EntityDescriptor ret = bytecode.describe(className);
+                return ret == null ? super.describe(className) : ret;
+            }
+
+            @Override
+            public Class loadClass(final String className) {
+                return Util.loadClassAny(className, sg.getRootFolder());
+            }
+
+            @Override
+            public byte[] getBytecode(final String className) {
+                final ClassPath cp = ClassPath.getClassPath(sg.getRootFolder(), ClassPath.EXECUTE);
+                if (cp != null) {
+                    final FileObject fo = cp.findResource(getResourceName(className));
+                    if (fo != null) {
+                        try {
+                            return fo.asBytes();
+                        } catch (IOException ex) {
+                        }
+                    }
+                }
+                return null;
+            }
+        };
+    }
+
+    protected static String getResourceName(final String className) {
+        return className.replace('.', '/') + ".class";
+    }
+
+    /**
+     * @return provider of the classes being compiled in an annotation processor, nothing is loaded
+     */
+    public static MetadataProvider forElements(final Elements elements) {
+        return new ElementMetadataProvider(elements);
+    }
+
+    /**
+     * @param classes provider of the class files
+     * @return provider that reads the descriptors from the class files, {@link #loadClass(String)} returns null
+     */
+    public static MetadataProvider forBytecode(final MetadataProvider classes) {
+        return new ClassFileMetadataProvider(classes);
+    }
+
+    /**
+     * Analyzes the sources with javac, works on code that isn't built. {@link #getBytecode(String)} returns null.
+     * @param sourceRoots source folders, all the .java files are read
+     * @param classPath class path of the dependencies
+     */
+    public static MetadataProvider forSources(final List<File> sourceRoots, final List<File> classPath) throws IOException {
+        return ElementMetadataProvider.analyze(sourceRoots, classPath);
+    }
+
+    public static MetadataProvider forClassLoader(final ClassLoader loader) {
+        return new ClassLoaderMetadataProvider(loader);
+    }
+
+    private static final class ClassLoaderMetadataProvider extends MetadataProvider {
+        private static final Object NOT_FOUND = new Object();
+
+        private final ClassLoader loader;
+        private final ConcurrentHashMap<String, Object> classes = new ConcurrentHashMap<>();
+
+        ClassLoaderMetadataProvider(final ClassLoader loader) {
+            this.loader = loader;
+        }
+
+        @Override
+        public Class loadClass(final String className) {
+            if (className == null) {
+                return null;
+            }
+            Object cls = classes.get(className);
+            if (cls == null) {
+                GenerationMetrics.enter();
+                try {
+                    cls = Class.forName(className, false, loader);
+                    GenerationMetrics.classLoaded();
+                } catch (Throwable ex) {
+                    cls = NOT_FOUND;
+                } finally {
+                    GenerationMetrics.exit(GenerationMetrics.LOAD);
+                }
+                classes.put(className, cls);
+            } else {
+                GenerationMetrics.cacheHit();
+            }
+            return cls == NOT_FOUND ? null : (Class) cls;
+        }
+
+        @Override
+        public byte[] getBytecode(final String className) {
+            try (final InputStream in = loader.getResourceAsStream(getResourceName(className))) {
+                if (in != null) {
+                    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    final byte[] buf = new byte[8192];
+                    int n;
+                    while ((n = in.read(buf)) > 0) {
+                        out.write(buf, 0, n);
+                    }
+                    return out.toByteArray();
+                }
+            } catch (IOException ex) {
+            }
+            return null;
+        }
+    }
+}
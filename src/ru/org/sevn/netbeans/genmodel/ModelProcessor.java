@@ -0,0 +1,146 @@
+/*
+ * Copyright 2018 Veronica Anokhina.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.org.sevn.netbeans.genmodel;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * Generates the Create/Modify/Query models and the Dao of the javax.persistence or jakarta.persistence entities
+ * during javac, the same files as {@link BatchGenerator} but read from the sources, see {@link ElementMetadataProvider}.
+ * The models are written in the round the entity is found, the Dao in the next round when the models are in the sources too.
+ * A class that is already in the sources is not generated. Usage and options:
+ * <pre>
+ * javac -processorpath genmodel.jar -processor ru.org.sevn.netbeans.genmodel.ModelProcessor
+ * -Agenmodel.kinds=create,modify,query,dao
+ * -Agenmodel.targetPackage=package of the generated classes, the package of the entity by default
+ * -Agenmodel.presenceMask=true for the Modify models with the presence mask, see {@link ModifyModelAction}
+ * </pre>
+ */
+public class ModelProcessor extends AbstractProcessor {
+
+    public static final String OPTION_KINDS = "genmodel.kinds";
+    public static final String OPTION_TARGET_PACKAGE = "genmodel.targetPackage";
+    public static final String OPTION_PRESENCE_MASK = "genmodel.presenceMask";
+
+    private static final List<String> JAVA_KINDS = Arrays.asList(BatchGenerator.CREATE, BatchGenerator.MODIFY, BatchGenerator.QUERY, BatchGenerator.DAO);
+
+    private final Map<String, TypeElement> pendingDao = new LinkedHashMap<>();
+    private final Set<String> done = new HashSet<>();
+    private List<String> kinds;
+    private String targetPackage;
+    private boolean presenceMask;
+
+    @Override
+    public synchronized void init(final ProcessingEnvironment env) {
+        super.init(env);
+        final String k = env.getOptions().get(OPTION_KINDS);
+        kinds = k == null ? JAVA_KINDS : Arrays.asList(k.toLowerCase().split(","));
+        targetPackage = env.getOptions().get(OPTION_TARGET_PACKAGE);
+        presenceMask = Boolean.parseBoolean(env.getOptions().get(OPTION_PRESENCE_MASK));
+    }
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return new HashSet<>(Arrays.asList("javax.persistence.Entity", "jakarta.persistence.Entity"));
+    }
+
+    @Override
+    public Set<String> getSupportedOptions() {
+        return new HashSet<>(Arrays.asList(OPTION_KINDS, OPTION_TARGET_PACKAGE, OPTION_PRESENCE_MASK));
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+        final GenerationMetrics.Run metrics = GenerationMetrics.begin("apt");
+        final MetadataProvider provider = MetadataProvider.forElements(processingEnv.getElementUtils());
+        final Map<String, TypeElement> dao = new LinkedHashMap<>(pendingDao);
+        pendingDao.clear();
+        for (final Map.Entry<String, TypeElement> e : dao.entrySet()) {
+            generate(provider, e.getValue(), true);
+        }
+        final List<TypeElement> entities = new ArrayList<>();
+        for (final TypeElement a : annotations) {
+            for (final Element e : roundEnv.getElementsAnnotatedWith(a)) {
+                if (e.getKind() == ElementKind.CLASS && done.add(e.toString())) {
+                    entities.add((TypeElement) e);
+                }
+            }
+        }
+        for (final TypeElement e : entities) {
+            generate(provider, e, roundEnv.processingOver());
+        }
+        if (dao.size() + entities.size() > 0) {
+            metrics.end();
+        }
+        return false;
+    }
+
+    /**
+     * @param withDao false to write the models and leave the Dao for the next round
+     */
+    private void generate(final MetadataProvider provider, final TypeElement entity, final boolean withDao) {
+        final EntityDescriptor src = provider.describe(processingEnv.getElementUtils().getBinaryName(entity).toString());
+        final String pkg = targetPackage == null ? src.getPackageName() : targetPackage;
+        int written = 0;
+        for (final Map.Entry<String, BaseAction> t : BatchGenerator.getJavaTargets(kinds, pkg, src.getSimpleName(), presenceMask).entrySet()) {
+            if (processingEnv.getElementUtils().getTypeElement(t.getKey()) != null) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, "Not generated, already exists: " + t.getKey(), entity);
+            } else if (t.getValue() instanceof DaoAction && !withDao && written > 0) {
+                pendingDao.put(src.getName(), entity);
+            } else {
+                write(provider, entity, src.getName(), t.getKey(), t.getValue());
+                written++;
+            }
+        }
+    }
+
+    private void write(final MetadataProvider provider, final TypeElement entity, final String srcClassName, final String targetClassName, final BaseAction action) {
+        GenerationMetrics.enter();
+        try {
+            final JavaFileObject file = processingEnv.getFiler().createSourceFile(targetClassName, entity);
+            try (final CodeWriter out = CodeWriter.of(file.openWriter())) {
+                action.formatJavaFile(out, provider, srcClassName, targetClassName);
+                BaseAction.appendEnd(out, srcClassName);
+                GenerationMetrics.emitted(out.length());
+            }
+        } catch (IOException | RuntimeException | LinkageError ex) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Can't generate " + targetClassName + ": " + ex, entity);
+        } finally {
+            GenerationMetrics.exit(GenerationMetrics.EMIT);
+        }
+    }
+}
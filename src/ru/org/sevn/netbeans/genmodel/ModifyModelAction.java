@@ -15,16 +15,22 @@
  */
 package ru.org.sevn.netbeans.genmodel;
 
-import java.lang.annotation.Annotation;
-import java.lang.reflect.Field;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Optional;
 import org.openide.awt.ActionID;
 import org.openide.awt.ActionReference;
 import org.openide.awt.ActionReferences;
 import org.openide.awt.ActionRegistration;
 import org.openide.util.NbBundle.Messages;
+import org.openide.util.NbPreferences;
 
+/**
+ * The model of the fields to update: every field is an Optional, null if the field isn't set,
+ * or with the presence mask layout the fields are plain and the bits of {@link #ASSIGNED} tell the set fields,
+ * so setting and reading a field allocates nothing. The Dao finds the layout by the {@link #ASSIGNED} field.
+ */
 @ActionID(
         category = "File",
         id = "ru.org.sevn.netbeans.genmodel.ModifyModelAction"
@@ -41,23 +47,69 @@ import org.openide.util.NbBundle.Messages;
 @Messages("CTL_ModifyModelAction=Create Modify Model")
 public final class ModifyModelAction extends BaseAction {
 
-    public static int useFieldModify(Field f, final String clsName) {
+    static final String PREF_PRESENCE_MASK = "modifyPresenceMask";
+
+    /**
+     * Name of the presence mask field: long, or long[] for more than 64 fields.
+     */
+    public static final String ASSIGNED = "assigned";
+
+    private final Boolean presenceMask;
+
+    public ModifyModelAction() {
+        this.presenceMask = null;
+    }
+
+    /**
+     * @param presenceMask true for the presence mask layout, false for the Optional fields
+     */
+    public ModifyModelAction(final boolean presenceMask) {
+        this.presenceMask = presenceMask;
+    }
+
+    /**
+     * @return the layout given to the constructor or the IDE preference
+     */
+    boolean isPresenceMask() {
+        return presenceMask == null ? isPresenceMaskPreferred() : presenceMask;
+    }
+
+    static boolean isPresenceMaskPreferred() {
+        return NbPreferences.forModule(ModifyModelAction.class).getBoolean(PREF_PRESENCE_MASK, false);
+    }
+
+    /**
+     * @return true if the Modify model has the presence mask layout
+     */
+    public static boolean isPresenceMask(final EntityDescriptor modifyModel) {
+        for (final FieldDescriptor f : modifyModel.getFields()) {
+            if (ASSIGNED.equals(f.getName()) && ("long".equals(f.getTypeName()) || "[J".equals(f.getTypeName()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param fields number of the fields
+     * @return expression testing the bit of the field in the mask
+     */
+    public static String getPresenceTest(final int index, final int fields) {
+        return "(" + getMaskElement(index, fields) + " & " + getBit(index) + ") != 0";
+    }
+
+    private static String getMaskElement(final int index, final int fields) {
+        return fields > 64 ? ASSIGNED + "[" + (index >>> 6) + "]" : ASSIGNED;
+    }
+
+    private static String getBit(final int index) {
+        return "0x" + Long.toHexString(1L << (index & 63)) + "L";
+    }
+
+    public static int useFieldModify(FieldDescriptor f, final String clsName) {
         if (!excludedTypes.contains(clsName)) {
-            f.setAccessible(true);
-            Annotation[] annotations = f.getAnnotations();
-            if (annotations != null) {
-                for (Annotation a : annotations) {
-                    //TODO
-                    final String astr = a.toString();
-                    if (astr.contains("@javax.persistence.") && astr.contains("Column")) {
-                        if (astr.contains("insertable=false")) {//updatable=false
-                            return 0;
-                        }
-                        if (astr.contains("updatable=false")) {
-                            return 0;
-                        }
-                    }
-                }
+            if (!f.isInsertable() || !f.isUpdatable()) {
+                return 0;
             }
             return 1;
         }
@@ -65,7 +117,7 @@ public final class ModifyModelAction extends BaseAction {
     }
     
     @Override
-    protected int useField(Field f, final String clsName, final String editedFileClassName) {
+    protected int useField(FieldDescriptor f, final String clsName, final String editedFileClassName) {
         return useFieldModify(f, clsName);
     }
     
@@ -76,7 +128,7 @@ public final class ModifyModelAction extends BaseAction {
     
     @Override
     protected String getFieldType(final String cls) {
-        return "Optional<" + Util.getClassNameShort(cls) + ">";
+        return "Optional<" + ClassNames.getClassNameShort(cls) + ">";
     }
     
     @Override
@@ -92,12 +144,68 @@ public final class ModifyModelAction extends BaseAction {
     }
 
     @Override
-    protected void appendSetter(final String editedFileClassName, final StringBuilder sb, final String paramName, final String cls) {
-        final String clsShort = Util.getClassNameShort(cls);
+    protected void appendSetter(final String editedFileClassName, final CodeWriter sb, final String paramName, final String cls) {
+        final String clsShort = ClassNames.getClassNameShort(cls);
         appendSetterRaw(editedFileClassName, sb, paramName, clsShort, "<T extends " + editedFileClassName + "> T", getSetterSet("o"));
         appendSetterRaw(editedFileClassName, sb, paramName, "Optional<" + clsShort +">", "<T extends " + editedFileClassName + "> T", "o");
     }
 
+    @Override
+    protected void formatJavaModel(final CodeWriter sb, 
+            final MetadataProvider provider, 
+            final String srcClassName, 
+            final String editedFileClassNameFull,
+            final String editedFileClassName) {
+        if (!isPresenceMask()) {
+            super.formatJavaModel(sb, provider, srcClassName, editedFileClassNameFull, editedFileClassName);
+            return;
+        }
+        final HashSet<String> usedClasses = new HashSet();
+        final LinkedHashMap<String, String> fields = new LinkedHashMap<>();
+        fillFields(provider, srcClassName, editedFileClassName, usedClasses, fields);
+
+        usedClasses.remove(editedFileClassNameFull);
+        for (Iterator<String> it = usedClasses.iterator(); it.hasNext();) {
+            String cl = it.next();
+            sb.append("import ").append(cl).append(";").append("\n");
+        }
+        sb.append("\n");
+        sb.append(getClassNameWithAccess(editedFileClassName)).append("{").append("\n");
+        sb.append("\n");
+        addConstructor(editedFileClassName, sb);
+        final int count = fields.size();
+        if (count > 64) {
+            sb.append("    private final long[] ").append(ASSIGNED).append(" = new long[").append((count + 63) >>> 6).append("];").append("\n");
+        } else {
+            sb.append("    private long ").append(ASSIGNED).append(";").append("\n");
+        }
+        for (String k : fields.keySet()) {
+            sb.append("    private ").append(ClassNames.getClassNameShort(fields.get(k))).append(" ").append(k).append(";").append("\n");
+        }
+        int index = 0;
+        for (String k : fields.keySet()) {
+            final String cls = ClassNames.getClassNameShort(fields.get(k));
+            final String name = ClassNames.toCamelCase(k);
+            sb.append("\n");
+            sb.append("    public ").append(cls).append(" get").append(name).append("() {").append("\n");
+            sb.append("        return ").append(k).append(";").append("\n");
+            sb.append("    }").append("\n");
+            sb.append("\n");
+            sb.append("    public boolean has").append(name).append("() {").append("\n");
+            sb.append("        return ").append(getPresenceTest(index, count)).append(";").append("\n");
+            sb.append("    }").append("\n");
+            sb.append("\n");
+            sb.append("    public <T extends ").append(editedFileClassName).append("> T set").append(name).append("(final ").append(cls).append(" o) {").append("\n");
+            sb.append("        this.").append(k).append(" = o;").append("\n");
+            sb.append("        this.").append(getMaskElement(index, count)).append(" |= ").append(getBit(index)).append(";").append("\n");
+            sb.append("        return (T)this;").append("\n");
+            sb.append("    }").append("\n");
+            index++;
+        }
+        sb.append("\n");
+        sb.append("}\n");
+    }
+
     @Override
     protected String getModelPrefix() {
         return "Modify";
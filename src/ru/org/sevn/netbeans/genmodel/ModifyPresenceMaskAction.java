@@ -0,0 +1,50 @@
+/*
+ * Copyright 2018 Veronica Anokhina.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.org.sevn.netbeans.genmodel;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import org.openide.awt.ActionID;
+import org.openide.awt.ActionReference;
+import org.openide.awt.ActionReferences;
+import org.openide.awt.ActionRegistration;
+import org.openide.util.NbPreferences;
+import org.openide.util.NbBundle.Messages;
+
+/**
+ * Chooses the layout of the Modify models: the presence mask or the Optional fields, see {@link ModifyModelAction}.
+ */
+@ActionID(
+        category = "File",
+        id = "ru.org.sevn.netbeans.genmodel.ModifyPresenceMaskAction"
+)
+@ActionRegistration(
+        displayName = "#CTL_ModifyPresenceMaskAction"
+)
+@ActionReferences({
+    @ActionReference(path = "Menu/File", position = 1439, separatorAfter = 1440)
+})
+@Messages("CTL_ModifyPresenceMaskAction=Modify model layout...")
+public final class ModifyPresenceMaskAction implements ActionListener {
+
+    @Override
+    public void actionPerformed(ActionEvent e) {
+        final String current = ModifyModelAction.isPresenceMaskPreferred() ? "the presence mask" : "Optional fields";
+        final boolean mask = Util.askYesNo("Modify model layout",
+                "Keep the set fields of the Modify models and the Dao in a presence mask instead of Optional fields?\nNow: " + current);
+        NbPreferences.forModule(ModifyModelAction.class).putBoolean(ModifyModelAction.PREF_PRESENCE_MASK, mask);
+    }
+}
@@ -15,7 +15,6 @@
  */
 package ru.org.sevn.netbeans.genmodel;
 
-import java.lang.reflect.Field;
 import org.openide.awt.ActionID;
 import org.openide.awt.ActionReference;
 import org.openide.awt.ActionReferences;
@@ -39,10 +38,10 @@ import org.openide.util.NbBundle.Messages;
 public final class QueryModelAction extends BaseAction {
 
     @Override
-    protected int useField(Field f, final String clsName, final String editedFileClassName) {
+    protected int useField(FieldDescriptor f, final String clsName, final String editedFileClassName) {
         if (!excludedTypes.contains(clsName)) {
             if (isAbstract(editedFileClassName)) {
-                if (CodegenUtil.isSerchable(f)) {
+                if (CodegenUtil.isSerchable(f.getCodegen())) {
                     return 1;
                 }
             }
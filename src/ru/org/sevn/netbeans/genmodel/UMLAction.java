@@ -20,25 +20,15 @@ import java.awt.event.ActionListener;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.UnsupportedEncodingException;
-import java.lang.reflect.Field;
 import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
-import java.nio.file.Files;
-import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.logging.Level;
-import org.netbeans.api.editor.EditorRegistry;
+import java.util.logging.Logger;
 import org.netbeans.api.project.SourceGroup;
 import org.openide.awt.ActionID;
 import org.openide.awt.ActionReference;
@@ -48,9 +38,8 @@ import org.openide.filesystems.FileObject;
 import org.openide.loaders.DataObject;
 import org.openide.util.Exceptions;
 import org.openide.util.Lookup;
+import org.openide.util.NbPreferences;
 import org.openide.util.NbBundle.Messages;
-import static ru.org.sevn.netbeans.genmodel.BaseAction.excludedFields;
-import static ru.org.sevn.netbeans.genmodel.BaseAction.getClassFields;
 
 @ActionID(
         category = "File",
@@ -61,13 +50,15 @@ import static ru.org.sevn.netbeans.genmodel.BaseAction.getClassFields;
         displayName = "#CTL_InterfaceAction"
 )
 @ActionReferences({
-    @ActionReference(path = "Menu/File", position = 1433, separatorAfter = 1434)
+    @ActionReference(path = "Menu/File", position = 1433)
     ,
   @ActionReference(path = "Toolbars/File", position = 600)
 })
 @Messages("CTL_InterfaceAction=UML class diagram")
 public final class UMLAction implements ActionListener {
 
+    private static final Logger LOG = Logger.getLogger(UMLAction.class.getName());
+
     @Override
     public void actionPerformed(ActionEvent e) {
         final List<FileObject> editedFiles = new ArrayList<>();
@@ -79,14 +70,28 @@ public final class UMLAction implements ActionListener {
             }
         }
         if (editedFiles.size() > 0) {
-            format(getJavaFileObject(Util.getCurrentEditor()), editedFiles, "ru.sifox.mpbx.entity"); //TODO
+            final FileObject current = getJavaFileObject(Util.getCurrentEditor());
+            final String pkg = ClassNames.getPackage(Util.getClassName(current != null ? current : editedFiles.get(0)));
+            new GenerationTask<Boolean>("Generating UML") {
+                @Override
+                protected Boolean compute() {
+                    return format(current, editedFiles, pkg == null ? "" : pkg);
+                }
+
+                @Override
+                protected void done(final Boolean result) {
+                    if (!result) {
+                        Util.err("Can't generate uml");
+                    }
+                }
+            }.schedule();
             return ;
         }
         
         Util.err("Can't find file name");
     }
     
-    private FileObject getJavaFileObject(final Lookup.Provider provider) {
+    static FileObject getJavaFileObject(final Lookup.Provider provider) {
         if (provider != null) {
             DataObject dataObject = provider.getLookup().lookup(DataObject.class);
             FileObject fileObject = provider.getLookup().lookup(FileObject.class);
@@ -105,7 +110,7 @@ public final class UMLAction implements ActionListener {
         return null;
     }
     
-    private boolean isJava(final String ext) {
+    private static boolean isJava(final String ext) {
         switch(ext) {
             case ".java":
             case "java":
@@ -114,26 +119,26 @@ public final class UMLAction implements ActionListener {
         return false;
     }
 
-    private void format(final FileObject current, final List<FileObject> editedFiles, final String... inPkg) {
-        final Map<String, Clazz> usedClasses = new LinkedHashMap<>();
+    /**
+     * Called in the background, see {@link GenerationTask}.
+     */
+    private boolean format(final FileObject current, final List<FileObject> editedFiles, final String... inPkg) {
         final List<Class> openedClasses = new ArrayList<>();
         
         for (final FileObject editedFile : editedFiles) {
             final Class srcClass = getClass(editedFile);
             if (srcClass != null) {
-                System.out.println("-------------o-"+srcClass.getName());
+                LOG.log(Level.FINE, "opened class {0}", srcClass.getName());
                 openedClasses.add(srcClass);
             }
         }
-        for (final Class srcClass : openedClasses) {
-            new Clazz(srcClass, usedClasses, openedClasses, 0, -1, inPkg);
-        }
+        final ClassGraph usedClasses = ClassGraph.build(describe(openedClasses), filter(openedClasses, inPkg), -1);
         if (openedClasses.size() > 0) {
-            formatJava(getClass(current), openedClasses, usedClasses, "ru.sifox.mpbx.entity"); //TODO
-            return;
+            formatJava(getClass(current), openedClasses, usedClasses, inPkg);
+            return true;
         }
         
-        Util.err("Can't generate uml");
+        return false;
     }
     
     private Class getClass(final FileObject editedFile) {
@@ -155,7 +160,7 @@ public final class UMLAction implements ActionListener {
     }
     
     private static boolean addInUsed(final Class cls, final String editedFilePackage) {
-        final String pkg = Util.getPackage(cls.getName());
+        final String pkg = ClassNames.getPackage(cls.getName());
 
         return !(cls.isArray() || 
                 cls.isPrimitive() || 
@@ -166,10 +171,10 @@ public final class UMLAction implements ActionListener {
     }
     
     public static StringBuilder getMethods(final HashSet<String> usedClasses, final Class cls) {
-        final String editedFilePackage = Util.getPackage(cls.getName());
+        final String editedFilePackage = ClassNames.getPackage(cls.getName());
         final HashMap<String, StringBuilder> ret = new HashMap();
         if (cls != null) {
-            for (final Method m : cls.getDeclaredMethods()) {
+            for (final Method m : EntityDescriptor.of(cls).getMethods()) {
                 if (m.getName().startsWith("get") && m.getParameterCount() == 0 ||
                         m.getName().startsWith("is") && m.getParameterCount() == 0
                         ) {
@@ -179,7 +184,7 @@ public final class UMLAction implements ActionListener {
                         usedClasses.add(returnType.getName());
                     }
                     ret.put(m.getName(), 
-                        new StringBuilder().append("    ").append(Util.getClassNameShort(returnType.toString())).append(" ").append(m.getName()).append("();\n")
+                        new StringBuilder().append("    ").append(ClassNames.getClassNameShort(returnType.toString())).append(" ").append(m.getName()).append("();\n")
                             );
                 } else if (m.getName().startsWith("set") && m.getParameterCount() == 1) {
                     final Class setType = m.getParameterTypes()[0];
@@ -187,7 +192,7 @@ public final class UMLAction implements ActionListener {
                         usedClasses.add(setType.getName());
                     }
                     ret.put(m.getName(), 
-                        new StringBuilder().append("    ").append("void").append(" ").append(m.getName()).append("(").append(Util.getClassNameShort(setType.toString())).append(" the").append(Util.getClassNameShort(setType.toString(), "")).append(");\n")
+                        new StringBuilder().append("    ").append("void").append(" ").append(m.getName()).append("(").append(ClassNames.getClassNameShort(setType.toString())).append(" the").append(ClassNames.getClassNameShort(setType.toString(), "")).append(");\n")
                     );
                 }
             }
@@ -209,262 +214,149 @@ public final class UMLAction implements ActionListener {
         }
     }
     
-    static class Clazz {
-        private final Class clazz;
-        private final boolean isabstract;
-        private final String fullname;
-        private final String name;
-        private final String pkg;
-        private final List<Clazz> extend = new ArrayList<>();
-        private final Map<String, Clazz> fields = new LinkedHashMap<>();
-        private String classType;
-        private String displayName;
-        
-        private boolean keepIt(final Class srcClass, final List<Class> openedClasses, final String... inPkg) {
-            if (openedClasses != null && openedClasses.size() > 1) {
-                return openedClasses.contains(srcClass);
-            }
-            for (final String p : inPkg) {
-                if (srcClass.getPackage() != null && srcClass.getPackage().getName().contains(p)) {
-                    return true;
-                }
-            }
-            return false;
-        }
-        public Clazz(final Class srcClass) {
-            this.clazz = srcClass;
-            final int mod = srcClass.getModifiers();
-            if (srcClass.isInterface()) {
-                classType = "interface";
-            } else if (srcClass.isEnum()) {
-                classType = "enum";
-            } else {
-                classType = "class";
-            }
-            if (srcClass.getPackage() == null) {
-                this.pkg = null;
-            } else {
-                this.pkg = srcClass.getPackage().getName();
-            }
-            this.name = srcClass.getSimpleName();
-            this.fullname = srcClass.getName();
-            this.displayName = name;
-            this.isabstract = Modifier.isAbstract(mod);
-        }
-        public Clazz(final Class srcClass, final Map<String, Clazz> classes, final List<Class> openedClasses, final int level, final int maxLevel, final String... inPkg ) {
-            this(srcClass);
-
-            //TODO order for extends
-            if (keepIt(srcClass, openedClasses, inPkg) && classes != null) {
-                classes.put(fullname, this);
-            }
-
-            final Class sclass = srcClass.getSuperclass();
-            if (sclass == null || sclass.isAssignableFrom(Object.class)) {
-                
-            } else {
-                exts(sclass, classes, openedClasses, level, maxLevel, inPkg);
-            }
-            for (final Class i : srcClass.getInterfaces()) {
-                exts(i, classes, openedClasses, level, maxLevel, inPkg);
-            }
-            
-            for (Field f : srcClass.getDeclaredFields()) {
-                if (isExcluded(f)) continue;
-                
-                final Clazz c = classes.get(f.getType().getName());
-                if (c == null) {
-                    if (keepIt(f.getType(), openedClasses, inPkg)) {
-                        if (level + 1 < maxLevel || maxLevel < 0) {
-                            new Clazz(f.getType(), classes, openedClasses, level + 1, maxLevel, inPkg);
-                        }
-                    }
-                }
-                final int mod = f.getModifiers();
-                String fname = f.getName();
-                if (Modifier.isPrivate(mod)) {
-                    fname = " - " + fname;
-                } else if (Modifier.isProtected(mod)) {
-                    fname = " # " + fname;
-                    
-                } else if (Modifier.isPublic(mod)) {
-                    fname = " + " + fname;
-                    
-                }
-                if (Modifier.isStatic(mod)) {
-                    fname = " {static} " + fname;
-                }
-                if (clazz.isEnum()) {
-                    fields.put(fname, null);
-                } else {
-                    fields.put(fname, new Clazz(f.getType()));
-                }
-            }
-        }
-        public void useFullName() {
-            this.displayName = name;
-        }
-        
-        public void collectLinks(final Map<String, Set<String>> links, final Map<String, Clazz> classes) {
-            Set<String> others = links.get(this.displayName);
-            if (others == null) {
-                others = new HashSet<>();
-                links.put(this.displayName, others);
-            }
-            for (final String f : fields.keySet()) {
-                final Clazz fieldType = fields.get(f);
-                if (fieldType != null) {
-                    Clazz keep = classes.get(fieldType.name);
-                    if (keep == null) {
-                        keep = classes.get(fieldType.fullname);
-                    }
-                    if (keep != null) {
-                        if (!others.contains(keep.displayName)) {
-                            others.add(keep.displayName);
-                        }
-                    }
-                }
-            }
-        }
-        
-        public String toString(final Map<String, Set<String>> links, final Map<String, Clazz> classes) {
-            collectLinks(links, classes);
-            final StringBuilder sb = new StringBuilder();
-            sb.append("    ");
-            if (!clazz.isInterface()) {
-                sb.append(isabstract ? "abstract " : "");
-            }
-            sb.append(classType).append(" ");
-            sb.append(displayName).append(" ");
-            if (extend.size() > 0) {
-                sb.append("extends ");
-                for (int i = 0; i < extend.size(); i++) {
-                    if (i > 0) {
-                        sb.append(", ");
-                    }
-                    sb.append(extend.get(i).displayName);
-                }
-            }
-            sb.append("{\n");
-            for (final String f : fields.keySet()) {
-                sb.append("        ").append(f);
-                if (fields.get(f) != null) {
-                    sb.append(" : ").append(fields.get(f).name).append("\n");
-                } else {
-                    sb.append("\n");
-                }
-            }
-            sb.append("    }\n");
-            return sb.toString();
+    private static ClassGraph.Filter filter(final List<Class> openedClasses, final String... inPkg) {
+        if (openedClasses != null && openedClasses.size() > 1) {
+            return ClassGraph.of(openedClasses);
         }
-        
-        
-        private void exts(final Class sclass, final Map<String, Clazz> classes, final List<Class> openedClasses, final int level, final int maxLevel, final String... inPkg) {
-            if (level + 1 < maxLevel || maxLevel < 0) {
-                Clazz sclazz = classes.get(sclass.getName());
-                if (sclazz == null) {
-                    if (keepIt(sclass, openedClasses, inPkg)) {
-                        sclazz = new Clazz(sclass, classes, openedClasses, level + 1, maxLevel, inPkg);
-                    }
-                }
-                if (sclazz != null) {
-                    extend.add(sclazz);
-                }
-            }
+        return ClassGraph.inPackages(inPkg);
+    }
+    
+    private static List<EntityDescriptor> describe(final List<Class> classes) {
+        final List<EntityDescriptor> ret = new ArrayList<>();
+        for (final Class c : classes) {
+            ret.add(EntityDescriptor.of(c));
         }
-
-        private boolean isExcluded(Field f) {
-            if (excludedFields.contains(f.getName())) {
-                return true;
-            }
-            if (f.getName().startsWith("_persistence_")) {
-                return true;
-            }
-            if (f.getName().startsWith("$VALUES")) {
-                return true;
+        return ret;
+    }
+    
+    static final String PREF_OUT_DIR = "umlOutDir";
+    static final String PREF_PART_SIZE = "umlPartSize";
+    static final String PREF_FORMATS = "umlFormats";
+    public static final int DEFAULT_PART_SIZE = 200;
+    
+    /**
+     * @return directory the diagrams are written to, see {@link UMLOutDirAction}
+     */
+    static File getOutDir() {
+        return new File(NbPreferences.forModule(UMLAction.class).get(PREF_OUT_DIR, "/tmp/uml-new"));
+    }
+    
+    /**
+     * @return maximum number of classes on a package diagram before it's split, the default if the preference is less than 1
+     */
+    static int getPartSize() {
+        final int ret = NbPreferences.forModule(UMLAction.class).getInt(PREF_PART_SIZE, DEFAULT_PART_SIZE);
+        return ret < 1 ? DEFAULT_PART_SIZE : ret;
+    }
+    
+    /**
+     * @return formats the diagrams are written in, comma separated names of {@link DiagramEmitter#ALL},
+     * PlantUML if the preference names no format or an unknown one
+     */
+    static List<DiagramEmitter> getFormats() {
+        final String names = NbPreferences.forModule(UMLAction.class).get(PREF_FORMATS, DiagramEmitter.PLANTUML);
+        try {
+            final List<DiagramEmitter> ret = DiagramEmitter.forNames(names);
+            if (ret.size() > 0) {
+                return ret;
             }
-            return false;
+        } catch (IllegalArgumentException ex) {
+            LOG.log(Level.WARNING, "Invalid {0} preference: {1}", new Object[] {PREF_FORMATS, ex.getMessage()});
         }
+        return DiagramEmitter.forNames(DiagramEmitter.PLANTUML);
     }
-    private void formatJava(final Class current, final List<Class> openedClasses, final Map<String, Clazz> usedClasses, final String... inPkg) {
-        final File outDir = new File("/tmp/uml-new");
+    
+    private void formatJava(final Class current, final List<Class> openedClasses, final ClassGraph usedClasses, final String... inPkg) {
+        final File outDir = getOutDir();
         outDir.mkdirs();
         
-        if (openedClasses.size() > 1 && current != null) {
-            final Map<String, Clazz> classes = new LinkedHashMap<>();
-            
-            for(final Class c : openedClasses) {
-                System.out.println("-------------1-"+c.getName()+":"+c.isEnum());
-                new Clazz(c, classes, openedClasses, 0, 2, inPkg); 
-            }
-            final StringBuilder sb = printClasses(classes);
-            
-            File out = new File(outDir, current.getName() + ".puml");
-            out.getParentFile().mkdirs();
-            try {
-                Files.write(out.toPath(), sb.toString().getBytes("UTF-8"));
-            } catch (Exception ex) {
-                Exceptions.printStackTrace(ex);
-            }
-        } else {
-            for (final Clazz c : usedClasses.values()) {
-                if (!c.clazz.isEnum() && !c.clazz.isInterface()) {
-                    System.out.println("---------------"+c.clazz.getName()+":"+c.clazz.isEnum());
-                    fillClass(outDir, c.clazz, inPkg);
+        final List<DiagramEmitter> formats = getFormats();
+        try (final DiagramWriter writer = new DiagramWriter(outDir, Runtime.getRuntime().availableProcessors(), 64)) {
+            if (openedClasses.size() > 1 && current != null) {
+                final ClassGraph classes = ClassGraph.build(describe(openedClasses), filter(openedClasses, inPkg), 2);
+                for (final DiagramEmitter e : formats) {
+                    writer.submit(current.getName() + e.getExtension(), e.of(classes));
+                }
+            } else {
+                for (final ClassGraph.Node c : usedClasses.getNodes()) {
+                    if (!c.getDescriptor().isEnum() && !c.getDescriptor().isInterface()) {
+                        final Class srcClass = c.getDescriptor().getType();
+                        //File out = new File(new File(outDir, srcClass.getPackage().getName().replace(".", "/")), srcClass.getName() + ".puml");
+                        writer.submit(srcClass.getName(), new Callable<ClassGraph>() {
+                            @Override
+                            public ClassGraph call() {
+                                return classDiagram(srcClass, inPkg);
+                            }
+                        }, formats);
+                    }
                 }
             }
+        } catch (IOException ex) {
+            Exceptions.printStackTrace(ex);
         }
         //ask(editedFile, sb);
     }
     
-    private StringBuilder printClasses(final Map<String, Clazz> classes) {
-        final Map<String, Clazz> classesDisplay = new LinkedHashMap<>();
-        final Map<String, Set<String>> links = new LinkedHashMap();
-        final StringBuilder sb = new StringBuilder();
-        sb.append("@startuml\n");
-        sb.append("'=====================GENERATED========================\n");
-        for(final String k : classes.keySet()) {
-            final Clazz cl = classes.get(k);
-            final Clazz clTheSameName = classesDisplay.get(cl.displayName);
-            if (clTheSameName != null) {
-                cl.useFullName();
+    private static String getPartName(final String name, final int part) {
+        return name + "-" + (part + 1);
+    }
+    
+    /**
+     * Diagram of the class and its neighbours up to two levels deep.
+     */
+    public static ClassGraph classDiagram(final Class srcClass, final String... inPkg) {
+        return ClassGraph.build(srcClass, ClassGraph.inPackages(inPkg), 2);
+    }
+    
+    public static ClassGraph classDiagram(final EntityDescriptor src, final String... inPkg) {
+        return ClassGraph.build(Collections.singletonList(src), ClassGraph.inPackages(inPkg), 2);
+    }
+    
+    /**
+     * Writes the diagram of the classes of the package and its subpackages to &lt;package&gt;.&lt;ext&gt; in every format,
+     * only the classes of the index under the package are loaded and the graph is built once.
+     * If there are more than maxSize classes the diagram is split into &lt;package&gt;-&lt;n&gt;.&lt;ext&gt; parts,
+     * see {@link ClassGraph#partition(int)}, and &lt;package&gt;.&lt;ext&gt; shows the parts.
+     * @return paths of the files, empty if there are no classes in the package
+     */
+    public static List<String> writePackageDiagrams(final DiagramWriter writer, final MetadataProvider provider, final ClassIndex index, final String pkg, final int maxSize, final List<DiagramEmitter> formats) {
+        final List<String> ret = new ArrayList<>();
+        final List<EntityDescriptor> roots = new ArrayList<>();
+        for (final String n : index.getClasses(pkg)) {
+            Cancellation.check();
+            final EntityDescriptor d = provider.describe(n);
+            if (d != null) {
+                roots.add(d);
             }
-            classesDisplay.put(cl.displayName, cl);
         }
-        final ArrayList<Clazz> classes2print = new ArrayList<>(classes.values());
-        Collections.reverse(classes2print);
-        for(final Clazz cl : classes2print) {
-            final String p = cl.pkg;
-            sb.append("package ").append(p).append(" {\n");
-            sb.append(cl.toString(links, classes)).append("\n");
-            sb.append("}\n");
+        if (roots.isEmpty()) {
+            return ret;
         }
-        
-        for(final String l : links.keySet()) {
-            for (String t : links.get(l)) {
-                sb.append(l).append(" --> ").append(t).append("\n");
+        final ClassGraph classes = ClassGraph.build(roots, ClassGraph.underPackage(pkg), -1);
+        final int[] parts = classes.size() <= maxSize ? null : classes.partition(maxSize);
+        int count = 0;
+        if (parts != null) {
+            for (final int p : parts) {
+                count = Math.max(count, p + 1);
             }
         }
-        sb.append("'=====================end==============================\n");
-        sb.append("@enduml\n");
-        return sb;
-    }
-    
-    private void fillClass(final File outDir, final Class srcClass, final String... inPkg) {
-        final Map<String, Clazz> classes = new LinkedHashMap<>();
-        new Clazz(srcClass, classes, null, 0, 2, inPkg); 
-
-        final StringBuilder sb = printClasses(classes);
-
-        //File out = new File(new File(outDir, srcClass.getPackage().getName().replace(".", "/")), srcClass.getName() + ".puml");
-        File out = new File(outDir, srcClass.getName() + ".puml");
-        out.getParentFile().mkdirs();
-        try {
-            Files.write(out.toPath(), sb.toString().getBytes("UTF-8"));
-        } catch (Exception ex) {
-            Exceptions.printStackTrace(ex);
+        for (final DiagramEmitter e : formats) {
+            ret.add(pkg + e.getExtension());
+            if (parts == null) {
+                writer.submit(pkg + e.getExtension(), e.of(classes));
+                continue;
+            }
+            final String[] files = new String[count];
+            for (int p = 0; p < count; p++) {
+                files[p] = getPartName(pkg, p) + e.getExtension();
+            }
+            writer.submit(pkg + e.getExtension(), e.ofIndex(classes, parts, files));
+            for (int p = 0; p < count; p++) {
+                ret.add(files[p]);
+                writer.submit(files[p], e.of(classes, parts, p));
+            }
         }
-        
+        return ret;
     }
     
     private void ask(final FileObject editedFile, final StringBuilder sb) {
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2018 Veronica Anokhina.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.org.sevn.netbeans.genmodel;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import javax.swing.JOptionPane;
+import org.openide.awt.ActionID;
+import org.openide.awt.ActionReference;
+import org.openide.awt.ActionReferences;
+import org.openide.awt.ActionRegistration;
+import org.openide.util.NbPreferences;
+import org.openide.util.NbBundle.Messages;
+
+/**
+ * Sets the formats the UML diagrams are written in.
+ */
+@ActionID(
+        category = "File",
+        id = "ru.org.sevn.netbeans.genmodel.UMLFormatsAction"
+)
+@ActionRegistration(
+        displayName = "#CTL_UMLFormatsAction"
+)
+@ActionReferences({
+    @ActionReference(path = "Menu/File", position = 1438)
+})
+@Messages("CTL_UMLFormatsAction=UML formats...")
+public final class UMLFormatsAction implements ActionListener {
+
+    @Override
+    public void actionPerformed(ActionEvent e) {
+        final String current = NbPreferences.forModule(UMLAction.class).get(UMLAction.PREF_FORMATS, DiagramEmitter.PLANTUML);
+        final Object value = JOptionPane.showInputDialog(null, "Comma separated formats: " + DiagramEmitter.ALL, "UML formats",
+                JOptionPane.QUESTION_MESSAGE, null, null, current);
+        if (value != null) {
+            try {
+                if (DiagramEmitter.forNames(value.toString()).size() > 0) {
+                    NbPreferences.forModule(UMLAction.class).put(UMLAction.PREF_FORMATS, value.toString().trim());
+                    return;
+                }
+            } catch (IllegalArgumentException ex) {
+            }
+            Util.err("Unknown UML formats: " + value + ", expected " + DiagramEmitter.ALL);
+        }
+    }
+}
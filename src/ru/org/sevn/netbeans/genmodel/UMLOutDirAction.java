@@ -0,0 +1,53 @@
+/*
+ * Copyright 2018 Veronica Anokhina.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.org.sevn.netbeans.genmodel;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import javax.swing.JFileChooser;
+import org.openide.awt.ActionID;
+import org.openide.awt.ActionReference;
+import org.openide.awt.ActionReferences;
+import org.openide.awt.ActionRegistration;
+import org.openide.util.NbPreferences;
+import org.openide.util.NbBundle.Messages;
+
+/**
+ * Chooses the directory the UML diagrams are written to.
+ */
+@ActionID(
+        category = "File",
+        id = "ru.org.sevn.netbeans.genmodel.UMLOutDirAction"
+)
+@ActionRegistration(
+        displayName = "#CTL_UMLOutDirAction"
+)
+@ActionReferences({
+    @ActionReference(path = "Menu/File", position = 1435)
+})
+@Messages("CTL_UMLOutDirAction=UML output folder...")
+public final class UMLOutDirAction implements ActionListener {
+
+    @Override
+    public void actionPerformed(ActionEvent e) {
+        final JFileChooser chooser = new JFileChooser(UMLAction.getOutDir());
+        chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        chooser.setDialogTitle("UML output folder");
+        if (chooser.showDialog(null, "Select") == JFileChooser.APPROVE_OPTION) {
+            NbPreferences.forModule(UMLAction.class).put(UMLAction.PREF_OUT_DIR, chooser.getSelectedFile().getAbsolutePath());
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2018 Veronica Anokhina.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.org.sevn.netbeans.genmodel;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.File;
+import java.util.List;
+import org.netbeans.api.project.SourceGroup;
+import org.openide.awt.ActionID;
+import org.openide.awt.ActionReference;
+import org.openide.awt.ActionReferences;
+import org.openide.awt.ActionRegistration;
+import org.openide.awt.StatusDisplayer;
+import org.openide.filesystems.FileObject;
+import org.openide.util.NbBundle.Messages;
+
+/**
+ * Class diagram of the whole package of the edited file, the classes are taken from the source group
+ * instead of the open editor tabs.
+ */
+@ActionID(
+        category = "File",
+        id = "ru.org.sevn.netbeans.genmodel.UMLPackageAction"
+)
+@ActionRegistration(
+        iconBase = "ru/org/sevn/netbeans/genmodel/i.png",
+        displayName = "#CTL_UMLPackageAction"
+)
+@ActionReferences({
+    @ActionReference(path = "Menu/File", position = 1434)
+})
+@Messages("CTL_UMLPackageAction=UML package diagram")
+public final class UMLPackageAction implements ActionListener {
+
+    @Override
+    public void actionPerformed(ActionEvent e) {
+        final FileObject editedFile = UMLAction.getJavaFileObject(Util.getCurrentEditor());
+        final SourceGroup sg = editedFile == null ? null : Util.getSourceGroup(editedFile);
+        if (sg == null) {
+            Util.err("Can't find file name");
+            return;
+        }
+        final String pkg = ClassNames.getPackage(Util.getClassName(editedFile));
+        if (pkg == null) {
+            Util.err("Can't generate uml for the default package");
+            return;
+        }
+        final File outDir = UMLAction.getOutDir();
+        new GenerationTask<List<String>>("Generating UML for " + pkg) {
+            @Override
+            protected List<String> compute() throws Exception {
+                final ClassIndex index = ClassIndex.scan(sg.getRootFolder());
+                try (final DiagramWriter writer = new DiagramWriter(outDir, Runtime.getRuntime().availableProcessors(), 64)) {
+                    return UMLAction.writePackageDiagrams(writer, MetadataProvider.forSourceGroup(sg), index, pkg, UMLAction.getPartSize(), UMLAction.getFormats());
+                }
+            }
+
+            @Override
+            protected void done(final List<String> result) {
+                if (result.size() > 0) {
+                    StatusDisplayer.getDefault().setStatusText("UML: " + new File(outDir, result.get(0)).getAbsolutePath());
+                } else {
+                    Util.err("Can't generate uml: no classes in " + pkg);
+                }
+            }
+        }.schedule();
+    }
+}
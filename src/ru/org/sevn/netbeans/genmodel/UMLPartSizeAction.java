@@ -0,0 +1,60 @@
+/*
+ * Copyright 2018 Veronica Anokhina.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.org.sevn.netbeans.genmodel;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import javax.swing.JOptionPane;
+import org.openide.awt.ActionID;
+import org.openide.awt.ActionReference;
+import org.openide.awt.ActionReferences;
+import org.openide.awt.ActionRegistration;
+import org.openide.util.NbPreferences;
+import org.openide.util.NbBundle.Messages;
+
+/**
+ * Sets the maximum number of classes on a package diagram before it's split into parts.
+ */
+@ActionID(
+        category = "File",
+        id = "ru.org.sevn.netbeans.genmodel.UMLPartSizeAction"
+)
+@ActionRegistration(
+        displayName = "#CTL_UMLPartSizeAction"
+)
+@ActionReferences({
+    @ActionReference(path = "Menu/File", position = 1437)
+})
+@Messages("CTL_UMLPartSizeAction=UML classes per diagram...")
+public final class UMLPartSizeAction implements ActionListener {
+
+    @Override
+    public void actionPerformed(ActionEvent e) {
+        final Object value = JOptionPane.showInputDialog(null, "Maximum number of classes on a package diagram", "UML classes per diagram",
+                JOptionPane.QUESTION_MESSAGE, null, null, UMLAction.getPartSize());
+        if (value != null) {
+            try {
+                final int size = Integer.parseInt(value.toString().trim());
+                if (size >= 1) {
+                    NbPreferences.forModule(UMLAction.class).putInt(UMLAction.PREF_PART_SIZE, size);
+                    return;
+                }
+            } catch (NumberFormatException ex) {
+            }
+            Util.err("Classes per diagram must be a number of at least 1: " + value);
+        }
+    }
+}
@@ -30,7 +30,10 @@ import javax.swing.JButton;
 import javax.swing.JLabel;
 import javax.swing.JScrollPane;
 import javax.swing.JTextArea;
-import org.netbeans.api.editor.EditorRegistry;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.JTextComponent;
+import javax.swing.text.StyledDocument;
 import org.netbeans.api.java.classpath.ClassPath;
 import org.netbeans.api.project.FileOwnerQuery;
 import org.netbeans.api.project.Project;
@@ -45,6 +48,7 @@ import org.openide.filesystems.FileObject;
 import org.openide.filesystems.FileUtil;
 import org.openide.loaders.DataObject;
 import org.openide.loaders.DataShadow;
+import org.openide.text.NbDocument;
 import org.openide.util.Exceptions;
 import org.openide.util.Lookup;
 import org.openide.util.Utilities;
@@ -57,13 +61,6 @@ public class Util {
 
     private static final String JAVA_MIME_TYPE = "text/x-java";
 
-    public static String toCamelCase(String s) {
-        if (s.length() > 1) {
-            return s.substring(0, 1).toUpperCase().concat(s.substring(1));
-        }
-        return s.toUpperCase();
-    }
-
     public static Class loadResourceClassAny(String name, FileObject fileInProject) throws ClassNotFoundException {
         try {
             return loadResourceClass(name, fileInProject);
@@ -72,36 +69,6 @@ public class Util {
         }
     }
 
-    public static String getClassNamePackage(final String className) {
-        if (className != null) {
-            final int lastPoint = className.lastIndexOf(".");
-            if (lastPoint > 0) {
-                return className.substring(0, lastPoint);
-            }
-        }
-        return null;
-    }
-    
-    public static String getClassNameShort(final String className) {
-        if (className != null) {
-            final int lastPoint = className.lastIndexOf(".");
-            if (lastPoint > 0) {
-                return className.substring(lastPoint + 1);
-            }
-        }
-        return className;
-    }
-    
-    public static String getClassNameShort(final String className, final String def) {
-        if (className != null) {
-            final int lastPoint = className.lastIndexOf(".");
-            if (lastPoint > 0) {
-                return className.substring(lastPoint + 1);
-            }
-        }
-        return def;
-    }
-
     public static Class loadClass(String name, FileObject fileInProject) throws ClassNotFoundException {
         try {
             return loadCompileClass(name, fileInProject);
@@ -146,16 +113,7 @@ public class Util {
     }
     
     public static Class loadClassAny(String name, FileObject fileInProject) {
-        for (final String pathType : new String[] {ClassPath.COMPILE, ClassPath.SOURCE, ClassPath.EXECUTE}) {
-            try {
-                Class cls = loadClass(name, fileInProject);
-                if (cls != null) {
-                    return cls;
-                }
-            } catch (Throwable ex) {
-            }
-        }
-        return null;
+        return ClassLoaderCache.instance().loadClassAny(name, fileInProject);
     }
 
     public static File getFile(final String className, final SourceGroup sg) {
@@ -214,20 +172,43 @@ public class Util {
         return null;
     }
 
-    public static String getPackage(final String className) {
-        if (className != null) {
-            final int lastPoint = className.lastIndexOf(".");
-            if (lastPoint > 0) {
-                return className.substring(0, lastPoint);
+    /**
+     * Inserts the string into the document of the editor as one undoable edit, the rest of the document is not touched.
+     * @return false if the document can't be modified at the offset
+     */
+    public static boolean insertString(final JTextComponent editor, final int offset, final String str) {
+        if (str == null) {
+            return false;
+        }
+        final Document doc = editor.getDocument();
+        final BadLocationException[] error = new BadLocationException[1];
+        final Runnable insert = new Runnable() {
+            @Override
+            public void run() {
+                GenerationMetrics.enter();
+                try {
+                    doc.insertString(offset, str, null);
+                } catch (BadLocationException ex) {
+                    error[0] = ex;
+                } finally {
+                    GenerationMetrics.exit(GenerationMetrics.WRITE);
+                }
             }
+        };
+        try {
+            if (doc instanceof StyledDocument) {
+                NbDocument.runAtomicAsUser((StyledDocument) doc, insert);
+            } else {
+                insert.run();
+            }
+        } catch (BadLocationException ex) {
+            error[0] = ex;
         }
-        return null;
-    }
-
-    public static void setSelectedString(final String str) {
-        if (str != null) {
-            EditorRegistry.lastFocusedComponent().replaceSelection(str);
+        if (error[0] != null) {
+            err("Can't insert at " + offset + ": " + error[0].getMessage());
+            return false;
         }
+        return true;
     }
 
     public static Collection<TopComponent> getCurrentEditors() {
@@ -252,6 +233,24 @@ public class Util {
         return editor.getSelectedTopComponent();
     }
 
+    /**
+     * @return file of the selected editor or null
+     */
+    public static FileObject getCurrentFile() {
+        return getFileObject(getCurrentEditor());
+    }
+
+    public static FileObject getFileObject(final Lookup.Provider provider) {
+        if (provider != null) {
+            final DataObject dataObject = provider.getLookup().lookup(DataObject.class);
+            if (dataObject != null) {
+                return getFileObjectWithShadowSupport(dataObject);
+            }
+            return provider.getLookup().lookup(FileObject.class);
+        }
+        return null;
+    }
+
     public static FileObject getFileObjectWithShadowSupport(DataObject dataObject) {
         if (dataObject instanceof DataShadow) {
             DataShadow dataShadow = (DataShadow) dataObject;
@@ -264,11 +263,6 @@ public class Util {
         DialogDisplayer.getDefault().notify(new NotifyDescriptor.Message(msg, NotifyDescriptor.ERROR_MESSAGE));
     }
 
-    public static String selectAll() {
-        EditorRegistry.lastFocusedComponent().selectAll();
-        return EditorRegistry.lastFocusedComponent().getSelectedText();
-    }
-
     public static FileObject getCurrentProjectDir() {
         Lookup lookup = Utilities.actionsGlobalContext();
         Project project = lookup.lookup(Project.class);
@@ -366,4 +360,4 @@ public class Util {
         }
     }
 }
-//https://platform.netbeans.org/tutorials/nbm-copyfqn.html
\ No newline at end of file
+//https://platform.netbeans.org/tutorials/nbm-copyfqn.html
\ No newline at end of file